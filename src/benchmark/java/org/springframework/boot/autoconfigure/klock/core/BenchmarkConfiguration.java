@@ -0,0 +1,68 @@
+package org.springframework.boot.autoconfigure.klock.core;
+
+import org.springframework.boot.autoconfigure.klock.config.KlockConfig;
+import org.springframework.boot.autoconfigure.klock.lock.LockFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+
+/**
+ * 基准测试的Spring上下文，装配与KlockAutoConfiguration一致的组件，
+ * Redis由进程内的锁代替
+ *
+ * @author kl
+ */
+@Configuration
+@EnableAspectJAutoProxy
+public class BenchmarkConfiguration {
+
+    static AnnotationConfigApplicationContext start() {
+        return new AnnotationConfigApplicationContext(BenchmarkConfiguration.class);
+    }
+
+    @Bean
+    public KlockConfig klockConfig() {
+        return new KlockConfig();
+    }
+
+    @Bean
+    public BusinessKeyProvider businessKeyProvider(KlockConfig klockConfig) {
+        return new BusinessKeyProvider(klockConfig.getSpelCompilerMode(), klockConfig.getExpressionCacheSize());
+    }
+
+    @Bean
+    public LockInfoProvider lockInfoProvider() {
+        return new LockInfoProvider();
+    }
+
+    @Bean
+    public StandInLocks.StandInLockBackend lockBackend() {
+        return new StandInLocks.StandInLockBackend();
+    }
+
+    @Bean
+    public LockFactory lockFactory() {
+        return new LockFactory();
+    }
+
+    @Bean
+    public SingleFlightResults singleFlightResults() {
+        return new SingleFlightResults();
+    }
+
+    @Bean
+    public RedisLockClient redisLockClient() {
+        return new RedisLockClient();
+    }
+
+    @Bean
+    public KlockAspectHandler klockAspectHandler() {
+        return new KlockAspectHandler();
+    }
+
+    @Bean
+    public BenchmarkService benchmarkService() {
+        return new BenchmarkService();
+    }
+}
@@ -0,0 +1,30 @@
+package org.springframework.boot.autoconfigure.klock.core;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 按不同线程数依次运行所有基准测试，参数为可选的基准名称正则，
+ * 线程数可通过系统属性klock.benchmark.threads指定，如 -Dklock.benchmark.threads=1,4,16
+ *
+ * @author kl
+ */
+public class BenchmarkRunner {
+
+    private static final String DEFAULT_THREADS = "1,4,16";
+
+    public static void main(String[] args) throws Exception {
+        String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*Benchmark";
+        for (String threads : System.getProperty("klock.benchmark.threads", DEFAULT_THREADS).split(",")) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .forks(1)
+                    .warmupIterations(3)
+                    .measurementIterations(5)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.springframework.boot.autoconfigure.klock.core;
+
+import org.springframework.boot.autoconfigure.klock.annotation.Klock;
+import org.springframework.boot.autoconfigure.klock.annotation.KlockKey;
+
+/**
+ * 基准测试的加锁目标方法
+ *
+ * @author kl
+ */
+public class BenchmarkService {
+
+    @Klock(name = "benchmark.plain")
+    public String plainKey(@KlockKey String id) {
+        return id;
+    }
+
+    @Klock(name = "benchmark.spel", keys = {"#user.name", "#user.id"})
+    public String spelKey(User user) {
+        return user.getName();
+    }
+
+    public static class User {
+
+        private final String name;
+
+        private final Long id;
+
+        public User(String name, Long id) {
+            this.name = name;
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.springframework.boot.autoconfigure.klock.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.autoconfigure.klock.annotation.Klock;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 业务key计算：@KlockKey参数直接取值与SpEL表达式求值，以及完整的锁信息构建
+ *
+ * @author kl
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KeyGenerationBenchmark {
+
+    private AnnotationConfigApplicationContext context;
+
+    private BusinessKeyProvider businessKeyProvider;
+
+    private LockInfoProvider lockInfoProvider;
+
+    private StubJoinPoint plainJoinPoint;
+
+    private Klock plainKlock;
+
+    private LockMethodMetadata plainMetadata;
+
+    private Object[] plainArgs;
+
+    private StubJoinPoint spelJoinPoint;
+
+    private Klock spelKlock;
+
+    private LockMethodMetadata spelMetadata;
+
+    private Object[] spelArgs;
+
+    @Setup
+    public void setup() throws Exception {
+        context = BenchmarkConfiguration.start();
+        businessKeyProvider = context.getBean(BusinessKeyProvider.class);
+        lockInfoProvider = context.getBean(LockInfoProvider.class);
+        BenchmarkService target = new BenchmarkService();
+
+        Method plainMethod = BenchmarkService.class.getMethod("plainKey", String.class);
+        plainArgs = new Object[]{"order-10001"};
+        plainJoinPoint = new StubJoinPoint(target, plainMethod, plainArgs);
+        plainKlock = plainMethod.getAnnotation(Klock.class);
+        plainMetadata = lockInfoProvider.getMetadata(plainJoinPoint, plainKlock);
+
+        Method spelMethod = BenchmarkService.class.getMethod("spelKey", BenchmarkService.User.class);
+        spelArgs = new Object[]{new BenchmarkService.User("kl", 10001L)};
+        spelJoinPoint = new StubJoinPoint(target, spelMethod, spelArgs);
+        spelKlock = spelMethod.getAnnotation(Klock.class);
+        spelMetadata = lockInfoProvider.getMetadata(spelJoinPoint, spelKlock);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String plainKey() {
+        return businessKeyProvider.getKeyName(plainMetadata, plainArgs);
+    }
+
+    @Benchmark
+    public String spelKey() {
+        return businessKeyProvider.getKeyName(spelMetadata, spelArgs);
+    }
+
+    @Benchmark
+    public Object plainLockInfo() {
+        return lockInfoProvider.get(plainJoinPoint, plainKlock);
+    }
+
+    @Benchmark
+    public Object spelLockInfo() {
+        return lockInfoProvider.get(spelJoinPoint, spelKlock);
+    }
+}
@@ -0,0 +1,108 @@
+package org.springframework.boot.autoconfigure.klock.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.LockType;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 加锁路径：切面的整体开销（锁为空操作）与RedisLockClient在进程内锁上的加锁、执行、释放
+ *
+ * @author kl
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LockPathBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class AspectState {
+
+        private AnnotationConfigApplicationContext context;
+
+        private BenchmarkService proxy;
+
+        private BenchmarkService target;
+
+        @Setup
+        public void setup() {
+            context = BenchmarkConfiguration.start();
+            context.getBean(StandInLocks.StandInLockBackend.class).setInMemory(false);
+            proxy = context.getBean(BenchmarkService.class);
+            target = new BenchmarkService();
+        }
+
+        @TearDown
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ClientState {
+
+        /**
+         * shared：所有线程竞争同一个锁；perThread：每个线程使用自己的锁名称
+         */
+        @Param({"shared", "perThread"})
+        public String contention;
+
+        private AnnotationConfigApplicationContext context;
+
+        private RedisLockClient redisLockClient;
+
+        @Setup
+        public void setup() {
+            context = BenchmarkConfiguration.start();
+            context.getBean(StandInLocks.StandInLockBackend.class).setInMemory(true);
+            redisLockClient = context.getBean(RedisLockClient.class);
+        }
+
+        @TearDown
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadLockInfo {
+
+        private LockInfo<String> lockInfo;
+
+        @Setup
+        public void setup(ClientState clientState) {
+            String lockName = "shared".equals(clientState.contention)
+                    ? "benchmark.client" : "benchmark.client." + Thread.currentThread().getId();
+            lockInfo = new LockInfo<>(LockType.Reentrant, lockName, 3, 10);
+        }
+    }
+
+    @Benchmark
+    public String directCall(AspectState state) {
+        return state.target.plainKey("order-10001");
+    }
+
+    @Benchmark
+    public String aspectPlainKey(AspectState state) {
+        return state.proxy.plainKey("order-10001");
+    }
+
+    @Benchmark
+    public String aspectSpelKey(AspectState state) {
+        return state.proxy.spelKey(new BenchmarkService.User("kl", 10001L));
+    }
+
+    @Benchmark
+    public String lockClient(ClientState state, ThreadLockInfo threadLockInfo) throws Throwable {
+        return state.redisLockClient.lock(() -> "success", threadLockInfo.lockInfo);
+    }
+}
@@ -0,0 +1,52 @@
+package org.springframework.boot.autoconfigure.klock.core;
+
+import org.springframework.boot.autoconfigure.klock.lock.Lock;
+import org.springframework.boot.autoconfigure.klock.lock.LockBackend;
+import org.springframework.boot.autoconfigure.klock.lock.MemoryLockBackend;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+/**
+ * 基准测试使用的进程内锁，替代Redis，只测量starter自身的开销
+ *
+ * @author kl
+ */
+final class StandInLocks {
+
+    /**
+     * 加锁和释放都直接成功
+     */
+    static final Lock NO_OP = new Lock() {
+        @Override
+        public boolean acquire() {
+            return true;
+        }
+
+        @Override
+        public ReleaseResult unlock() {
+            return ReleaseResult.RELEASED;
+        }
+    };
+
+    private StandInLocks() {
+    }
+
+    /**
+     * 按配置返回直接成功的锁或MemoryLockBackend的锁，不连接Redis
+     */
+    static class StandInLockBackend implements LockBackend {
+
+        private final MemoryLockBackend memoryLockBackend = new MemoryLockBackend();
+
+        private volatile boolean inMemory;
+
+        void setInMemory(boolean inMemory) {
+            this.inMemory = inMemory;
+        }
+
+        @Override
+        public Lock getLock(LockInfo lockInfo) {
+            return inMemory ? memoryLockBackend.getLock(lockInfo) : NO_OP;
+        }
+    }
+}
@@ -1,13 +1,14 @@
 package org.springframework.boot.autoconfigure.klock;
 
-import io.netty.channel.nio.NioEventLoopGroup;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.client.RedisClient;
 import org.redisson.client.codec.Codec;
 import org.redisson.config.Config;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
@@ -15,14 +16,29 @@ import org.springframework.boot.autoconfigure.klock.config.KlockConfig;
 import org.springframework.boot.autoconfigure.klock.core.BusinessKeyProvider;
 import org.springframework.boot.autoconfigure.klock.core.KlockAspectHandler;
 import org.springframework.boot.autoconfigure.klock.core.LockInfoProvider;
+import org.springframework.boot.autoconfigure.klock.core.ReactiveLockSupport;
 import org.springframework.boot.autoconfigure.klock.core.RedisLockClient;
+import org.springframework.boot.autoconfigure.klock.core.SingleFlightResults;
+import org.springframework.boot.autoconfigure.klock.lock.LettuceLockBackend;
+import org.springframework.boot.autoconfigure.klock.lock.LockBackend;
 import org.springframework.boot.autoconfigure.klock.lock.LockFactory;
+import org.springframework.boot.autoconfigure.klock.lock.MemoryLockBackend;
+import org.springframework.boot.autoconfigure.klock.lock.RedLockNodes;
+import org.springframework.boot.autoconfigure.klock.lock.RedissonLockBackend;
+import org.springframework.boot.autoconfigure.klock.metrics.ContentionProfiler;
+import org.springframework.boot.autoconfigure.klock.metrics.HeldLockRegistry;
+import org.springframework.boot.autoconfigure.klock.metrics.KlockEndpoint;
+import org.springframework.boot.autoconfigure.klock.metrics.KlockMetrics;
+import org.springframework.boot.autoconfigure.klock.metrics.MicrometerKlockMetrics;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.util.ClassUtils;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  *
  * @author kl
@@ -39,24 +55,6 @@ public class KlockAutoConfiguration {
     @Autowired
     private KlockConfig klockConfig;
 
-    @Bean(destroyMethod = "shutdown")
-    @ConditionalOnMissingBean
-    RedissonClient redisson() throws Exception {
-        Config config = new Config();
-        if(klockConfig.getClusterServer()!=null){
-            config.useClusterServers().setPassword(klockConfig.getPassword())
-                    .addNodeAddress(klockConfig.getClusterServer().getNodeAddresses());
-        }else {
-            config.useSingleServer().setAddress(klockConfig.getAddress())
-                    .setDatabase(klockConfig.getDatabase())
-                    .setPassword(klockConfig.getPassword());
-        }
-        Codec codec=(Codec) ClassUtils.forName(klockConfig.getCodec(),ClassUtils.getDefaultClassLoader()).newInstance();
-        config.setCodec(codec);
-        config.setEventLoopGroup(new NioEventLoopGroup());
-        return Redisson.create(config);
-    }
-
     @Bean
     public LockInfoProvider lockInfoProvider(){
         return new LockInfoProvider();
@@ -64,7 +62,12 @@ public class KlockAutoConfiguration {
 
     @Bean
     public BusinessKeyProvider businessKeyProvider(){
-        return new BusinessKeyProvider();
+        return new BusinessKeyProvider(klockConfig.getSpelCompilerMode(), klockConfig.getExpressionCacheSize());
+    }
+
+    @Bean
+    public SingleFlightResults singleFlightResults(){
+        return new SingleFlightResults();
     }
 
     @Bean
@@ -76,4 +79,151 @@ public class KlockAutoConfiguration {
     public RedisLockClient redisLockClient(){
         return new RedisLockClient();
     }
+
+    /**
+     * 默认使用Redis存储锁
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = KlockConfig.PREFIX, name = "backend", havingValue = "redis", matchIfMissing = true)
+    static class KlockRedisConfiguration {
+
+        @Autowired
+        private KlockConfig klockConfig;
+
+        @Bean(destroyMethod = "shutdown")
+        @ConditionalOnMissingBean
+        RedissonClient redisson() throws Exception {
+            Config config = new Config();
+            if(klockConfig.getClusterServer()!=null){
+                config.useClusterServers().setPassword(klockConfig.getPassword())
+                        .addNodeAddress(klockConfig.getClusterServer().getNodeAddresses());
+            }else {
+                config.useSingleServer().setAddress(klockConfig.getAddress())
+                        .setDatabase(klockConfig.getDatabase())
+                        .setPassword(klockConfig.getPassword());
+            }
+            config.setCodec(createCodec());
+            return Redisson.create(config);
+        }
+
+        /**
+         * RedLock的各个节点相互独立，每个节点一个单机模式的客户端
+         */
+        @Bean(destroyMethod = "shutdown")
+        @ConditionalOnProperty(prefix = KlockConfig.PREFIX, name = "red-lock.node-addresses")
+        public RedLockNodes redLockNodes() throws Exception {
+            KlockConfig.RedLockServer redLock = klockConfig.getRedLock();
+            List<RedissonClient> clients = new ArrayList<>();
+            for (String nodeAddress : redLock.getNodeAddresses()) {
+                Config config = new Config();
+                config.useSingleServer().setAddress(nodeAddress)
+                        .setDatabase(redLock.getDatabase())
+                        .setPassword(redLock.getPassword());
+                config.setCodec(createCodec());
+                clients.add(Redisson.create(config));
+            }
+            return new RedLockNodes(clients, redLock.getClockDriftFactor(), redLock.getResponseTimeout());
+        }
+
+        private Codec createCodec() throws Exception {
+            return (Codec) ClassUtils.forName(klockConfig.getCodec(), ClassUtils.getDefaultClassLoader()).newInstance();
+        }
+
+        @Bean
+        @ConditionalOnMissingBean(LockBackend.class)
+        public RedissonLockBackend lockBackend() {
+            return new RedissonLockBackend();
+        }
+    }
+
+    /**
+     * spring.klock.backend=lettuce时复用应用的LettuceConnectionFactory，不创建Redisson客户端
+     */
+    @Configuration
+    @ConditionalOnClass(name = {"org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory",
+            "io.lettuce.core.RedisClient"})
+    @ConditionalOnProperty(prefix = KlockConfig.PREFIX, name = "backend", havingValue = "lettuce")
+    static class KlockLettuceConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(LockBackend.class)
+        public LettuceLockBackend lockBackend() {
+            return new LettuceLockBackend();
+        }
+    }
+
+    /**
+     * spring.klock.backend=memory时在JVM内加锁，不创建Redis连接
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = KlockConfig.PREFIX, name = "backend", havingValue = "memory")
+    static class KlockMemoryConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(LockBackend.class)
+        public MemoryLockBackend lockBackend() {
+            return new MemoryLockBackend();
+        }
+    }
+
+    /**
+     * classpath中存在Reactor时支持返回Mono/Flux的加锁方法
+     */
+    @Configuration
+    @ConditionalOnClass(name = "reactor.core.publisher.Mono")
+    static class KlockReactiveConfiguration {
+
+        @Bean
+        public ReactiveLockSupport reactiveLockSupport() {
+            return new ReactiveLockSupport();
+        }
+    }
+
+    /**
+     * classpath中存在actuator时统计热点锁并登记本节点持有的锁，通过 /actuator/klock 查看，
+     * DELETE请求清空统计，DELETE /actuator/klock/{id} 强制释放一条持有记录
+     */
+    @Configuration
+    @ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.annotation.Endpoint")
+    static class KlockEndpointConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnProperty(prefix = KlockConfig.PREFIX, name = "profiler.enabled", havingValue = "true", matchIfMissing = true)
+        public ContentionProfiler contentionProfiler(KlockConfig klockConfig) {
+            KlockConfig.Profiler profiler = klockConfig.getProfiler();
+            return new ContentionProfiler(profiler.getCapacity(), profiler.getContendedThreshold());
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnProperty(prefix = KlockConfig.PREFIX, name = "held-locks.enabled", havingValue = "true", matchIfMissing = true)
+        public HeldLockRegistry heldLockRegistry() {
+            return new HeldLockRegistry();
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        public KlockEndpoint klockEndpoint(ObjectProvider<ContentionProfiler> contentionProfiler,
+                                           ObjectProvider<HeldLockRegistry> heldLockRegistry,
+                                           KlockConfig klockConfig) {
+            return new KlockEndpoint(contentionProfiler.getIfAvailable(), heldLockRegistry.getIfAvailable(),
+                    klockConfig.getHeldLocks().getForceReleaseTimeout());
+        }
+    }
+
+    /**
+     * classpath中存在Micrometer时输出锁的监控指标，actuator会把MeterBinder绑定到应用的注册表
+     */
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    @ConditionalOnProperty(prefix = KlockConfig.PREFIX, name = "metrics.enabled", havingValue = "true", matchIfMissing = true)
+    static class KlockMetricsConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(KlockMetrics.class)
+        public MicrometerKlockMetrics klockMetrics(KlockConfig klockConfig) {
+            return new MicrometerKlockMetrics(klockConfig.getMetrics().getMaxLockNames());
+        }
+    }
 }
@@ -4,7 +4,9 @@ import org.springframework.boot.autoconfigure.klock.config.KlockConfig;
 import org.springframework.boot.autoconfigure.klock.core.BusinessKeyProvider;
 import org.springframework.boot.autoconfigure.klock.core.KlockAspectHandler;
 import org.springframework.boot.autoconfigure.klock.core.LockInfoProvider;
+import org.springframework.boot.autoconfigure.klock.core.SingleFlightResults;
 import org.springframework.boot.autoconfigure.klock.lock.LockFactory;
+import org.springframework.boot.autoconfigure.klock.lock.RedissonLockBackend;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
@@ -26,6 +28,16 @@ public class KlockConfiguration {
         return new BusinessKeyProvider();
     }
 
+    @Bean
+    public RedissonLockBackend lockBackend(){
+        return new RedissonLockBackend();
+    }
+
+    @Bean
+    public SingleFlightResults singleFlightResults(){
+        return new SingleFlightResults();
+    }
+
     @Bean
     public LockFactory lockFactory(){
         return new LockFactory();
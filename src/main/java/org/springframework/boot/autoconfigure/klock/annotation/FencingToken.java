@@ -0,0 +1,17 @@
+package org.springframework.boot.autoconfigure.klock.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ *
+ * @author kl
+ * Content :标注在@Klock方法的long参数上，调用时该参数会被替换为本次加锁获得的fencing token，
+ * 仅支持可重入锁
+ */
+@Target(value = {ElementType.PARAMETER})
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface FencingToken {
+}
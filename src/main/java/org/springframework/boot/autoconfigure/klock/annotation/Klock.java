@@ -46,10 +46,10 @@ public @interface Klock {
      String [] keys() default {};
 
      /**
-     * 加锁超时的处理策略
+     * 加锁超时的处理策略，默认快速失败，与未读取注解策略时的行为一致
      * @return lockTimeoutStrategy
      */
-     LockTimeoutStrategy lockTimeoutStrategy() default LockTimeoutStrategy.NO_OPERATION;
+     LockTimeoutStrategy lockTimeoutStrategy() default LockTimeoutStrategy.FAIL_FAST;
 
     /**
      * 自定义加锁超时的处理策略
@@ -58,10 +58,10 @@ public @interface Klock {
      String customLockTimeoutStrategy() default "";
 
      /**
-     * 释放锁时已超时的处理策略
+     * 释放锁时已超时的处理策略，默认快速失败，与未读取注解策略时的行为一致
      * @return releaseTimeoutStrategy
      */
-     ReleaseTimeoutStrategy releaseTimeoutStrategy() default ReleaseTimeoutStrategy.NO_OPERATION;
+     ReleaseTimeoutStrategy releaseTimeoutStrategy() default ReleaseTimeoutStrategy.FAIL_FAST;
 
     /**
      * 自定义释放锁时已超时的处理策略
@@ -69,5 +69,33 @@ public @interface Klock {
      */
      String customReleaseTimeoutStrategy() default "";
 
+    /**
+     * 多key模式，每个业务key单独加锁并在一次脚本调用中原子地全部获取，
+     * 集合类型的@KlockKey参数按元素展开为多个key，仅支持Reentrant锁
+     * @return multiKey
+     */
+     boolean multiKey() default false;
+
+    /**
+     * Semaphore锁的许可总数，即同一锁名称最多同时持有的数量，
+     * 在首次使用该锁名称时设置，之后修改不会影响已存在的信号量
+     * @return permits
+     */
+     int permits() default 1;
+
+    /**
+     * single-flight模式，持锁者的返回值共享给同一锁名称上并发等待的调用方，
+     * 等待者拿到锁后直接返回该结果，不再执行方法，不支持响应式方法和@FencingToken
+     * @return singleFlight
+     */
+     boolean singleFlight() default false;
+
+    /**
+     * 自适应租期，按该方法实际的持锁时间分位数加余量计算租期，leaseTime作为租期上限，
+     * 参数见spring.klock.adaptive-lease，不支持leaseTime为-1
+     * @return adaptiveLease
+     */
+     boolean adaptiveLease() default false;
+
 
 }
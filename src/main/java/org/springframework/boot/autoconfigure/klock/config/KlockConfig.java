@@ -1,6 +1,7 @@
 package org.springframework.boot.autoconfigure.klock.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.expression.spel.SpelCompilerMode;
 
 /**
  * Created by kl on 2017/12/29.
@@ -11,7 +12,12 @@ public class KlockConfig {
   public static final String PREFIX = "spring.klock";
   public static long DEFAULT_WAIT_TIME = 3;
   public static long DEFAULT_LEASE_TIME = 10;
+  public static long DEFAULT_KEEP_ACQUIRE_NOTIFIED_TIMEOUT = 3 * 60 * 1000L;
+  public static int DEFAULT_EXPRESSION_CACHE_SIZE = 1024;
+  public static SpelCompilerMode DEFAULT_SPEL_COMPILER_MODE = SpelCompilerMode.MIXED;
 
+  //backend
+  private Backend backend = Backend.REDIS;
   //redisson
   private String address;
   private String password;
@@ -21,6 +27,36 @@ public class KlockConfig {
   //lock
   private long waitTime = DEFAULT_WAIT_TIME;
   private long leaseTime = DEFAULT_LEASE_TIME;
+  private long keepAcquireNotifiedTimeout = DEFAULT_KEEP_ACQUIRE_NOTIFIED_TIMEOUT;
+  //spel
+  private SpelCompilerMode spelCompilerMode = DEFAULT_SPEL_COMPILER_MODE;
+  private int expressionCacheSize = DEFAULT_EXPRESSION_CACHE_SIZE;
+  //metrics
+  private Metrics metrics = new Metrics();
+  //local lock
+  private LocalLock localLock = new LocalLock();
+  //read lock sharing
+  private ReadLockSharing readLockSharing = new ReadLockSharing();
+  //lock cache
+  private LockCache lockCache = new LockCache();
+  //red lock
+  private RedLockServer redLock = new RedLockServer();
+  //single flight
+  private SingleFlight singleFlight = new SingleFlight();
+  //contention profiler
+  private Profiler profiler = new Profiler();
+  //held locks
+  private HeldLocks heldLocks = new HeldLocks();
+  //adaptive lease
+  private AdaptiveLease adaptiveLease = new AdaptiveLease();
+
+  public Backend getBackend() {
+    return backend;
+  }
+
+  public void setBackend(Backend backend) {
+    this.backend = backend;
+  }
 
   public String getAddress() {
     return address;
@@ -62,6 +98,14 @@ public class KlockConfig {
     this.leaseTime = leaseTime;
   }
 
+  public long getKeepAcquireNotifiedTimeout() {
+    return keepAcquireNotifiedTimeout;
+  }
+
+  public void setKeepAcquireNotifiedTimeout(long keepAcquireNotifiedTimeout) {
+    this.keepAcquireNotifiedTimeout = keepAcquireNotifiedTimeout;
+  }
+
   public int getDatabase() {
     return database;
   }
@@ -70,6 +114,94 @@ public class KlockConfig {
     this.database = database;
   }
 
+  public SpelCompilerMode getSpelCompilerMode() {
+    return spelCompilerMode;
+  }
+
+  public void setSpelCompilerMode(SpelCompilerMode spelCompilerMode) {
+    this.spelCompilerMode = spelCompilerMode;
+  }
+
+  public int getExpressionCacheSize() {
+    return expressionCacheSize;
+  }
+
+  public void setExpressionCacheSize(int expressionCacheSize) {
+    this.expressionCacheSize = expressionCacheSize;
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public LocalLock getLocalLock() {
+    return localLock;
+  }
+
+  public void setLocalLock(LocalLock localLock) {
+    this.localLock = localLock;
+  }
+
+  public LockCache getLockCache() {
+    return lockCache;
+  }
+
+  public void setLockCache(LockCache lockCache) {
+    this.lockCache = lockCache;
+  }
+
+  public RedLockServer getRedLock() {
+    return redLock;
+  }
+
+  public void setRedLock(RedLockServer redLock) {
+    this.redLock = redLock;
+  }
+
+  public SingleFlight getSingleFlight() {
+    return singleFlight;
+  }
+
+  public void setSingleFlight(SingleFlight singleFlight) {
+    this.singleFlight = singleFlight;
+  }
+
+  public Profiler getProfiler() {
+    return profiler;
+  }
+
+  public void setProfiler(Profiler profiler) {
+    this.profiler = profiler;
+  }
+
+  public HeldLocks getHeldLocks() {
+    return heldLocks;
+  }
+
+  public void setHeldLocks(HeldLocks heldLocks) {
+    this.heldLocks = heldLocks;
+  }
+
+  public AdaptiveLease getAdaptiveLease() {
+    return adaptiveLease;
+  }
+
+  public void setAdaptiveLease(AdaptiveLease adaptiveLease) {
+    this.adaptiveLease = adaptiveLease;
+  }
+
+  public ReadLockSharing getReadLockSharing() {
+    return readLockSharing;
+  }
+
+  public void setReadLockSharing(ReadLockSharing readLockSharing) {
+    this.readLockSharing = readLockSharing;
+  }
+
   public ClusterServer getClusterServer() {
     return clusterServer;
   }
@@ -78,6 +210,21 @@ public class KlockConfig {
     this.clusterServer = clusterServer;
   }
 
+  public enum Backend {
+    /**
+     * 基于Redisson的分布式锁
+     */
+    REDIS,
+    /**
+     * 复用spring-data-redis连接的字符串锁，仅支持可重入锁
+     */
+    LETTUCE,
+    /**
+     * JVM内的锁，适用于单节点部署和测试
+     */
+    MEMORY
+  }
+
   public static class ClusterServer {
 
     private String[] nodeAddresses;
@@ -90,4 +237,298 @@ public class KlockConfig {
       this.nodeAddresses = nodeAddresses;
     }
   }
+
+  public static class Metrics {
+
+    /**
+     * 是否输出Micrometer监控指标
+     */
+    private boolean enabled = true;
+
+    /**
+     * 指标中锁名称标签的最大数量，超出的归入_other
+     */
+    private int maxLockNames = 100;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getMaxLockNames() {
+      return maxLockNames;
+    }
+
+    public void setMaxLockNames(int maxLockNames) {
+      this.maxLockNames = maxLockNames;
+    }
+  }
+
+  public static class LocalLock {
+
+    /**
+     * 是否在Redis锁之前先获取JVM本地锁，仅对Reentrant和Write锁生效
+     */
+    private boolean enabled = false;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+  }
+
+  public static class ReadLockSharing {
+
+    /**
+     * 是否让本节点同一锁名称的读者共用一次Redis读锁获取，有本地写者等待时读者让行
+     */
+    private boolean enabled = false;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+  }
+
+  public static class LockCache {
+
+    /**
+     * 缓存的Redisson锁对象最大数量
+     */
+    private long maxSize = 10000;
+
+    /**
+     * 锁对象多久未被访问后移出缓存，单位：秒
+     */
+    private long expireAfterAccess = 60;
+
+    public long getMaxSize() {
+      return maxSize;
+    }
+
+    public void setMaxSize(long maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    public long getExpireAfterAccess() {
+      return expireAfterAccess;
+    }
+
+    public void setExpireAfterAccess(long expireAfterAccess) {
+      this.expireAfterAccess = expireAfterAccess;
+    }
+  }
+
+  public static class Profiler {
+
+    /**
+     * classpath中存在actuator时是否统计热点锁并通过klock端点输出
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每类统计保存的锁名称数量
+     */
+    private int capacity = 100;
+
+    /**
+     * 等待超过该时间的加锁视为发生竞争，单位：毫秒
+     */
+    private long contendedThreshold = 10;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getCapacity() {
+      return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+      this.capacity = capacity;
+    }
+
+    public long getContendedThreshold() {
+      return contendedThreshold;
+    }
+
+    public void setContendedThreshold(long contendedThreshold) {
+      this.contendedThreshold = contendedThreshold;
+    }
+  }
+
+  public static class HeldLocks {
+
+    /**
+     * classpath中存在actuator时是否登记本节点持有的锁并通过klock端点输出
+     */
+    private boolean enabled = true;
+
+    /**
+     * 通过端点强制释放锁的超时时间，单位：毫秒
+     */
+    private long forceReleaseTimeout = 3000;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public long getForceReleaseTimeout() {
+      return forceReleaseTimeout;
+    }
+
+    public void setForceReleaseTimeout(long forceReleaseTimeout) {
+      this.forceReleaseTimeout = forceReleaseTimeout;
+    }
+  }
+
+  public static class AdaptiveLease {
+
+    /**
+     * 租期取持锁时间的该分位数
+     */
+    private double percentile = 0.99;
+
+    /**
+     * 分位数的放大倍数
+     */
+    private double headroom = 1.5;
+
+    /**
+     * 租期下限，单位：秒，上限为方法配置的leaseTime
+     */
+    private long minLeaseTime = 1;
+
+    /**
+     * 样本数达到该值之前使用方法配置的leaseTime
+     */
+    private long minSamples = 100;
+
+    public double getPercentile() {
+      return percentile;
+    }
+
+    public void setPercentile(double percentile) {
+      this.percentile = percentile;
+    }
+
+    public double getHeadroom() {
+      return headroom;
+    }
+
+    public void setHeadroom(double headroom) {
+      this.headroom = headroom;
+    }
+
+    public long getMinLeaseTime() {
+      return minLeaseTime;
+    }
+
+    public void setMinLeaseTime(long minLeaseTime) {
+      this.minLeaseTime = minLeaseTime;
+    }
+
+    public long getMinSamples() {
+      return minSamples;
+    }
+
+    public void setMinSamples(long minSamples) {
+      this.minSamples = minSamples;
+    }
+  }
+
+  public static class SingleFlight {
+
+    /**
+     * single-flight模式下结果的保留时间，需覆盖等待者拿到锁的时间，单位：毫秒
+     */
+    private long resultTtl = 1000;
+
+    public long getResultTtl() {
+      return resultTtl;
+    }
+
+    public void setResultTtl(long resultTtl) {
+      this.resultTtl = resultTtl;
+    }
+  }
+
+  public static class RedLockServer {
+
+    /**
+     * 相互独立的Redis主节点地址，建议至少3个且为奇数
+     */
+    private String[] nodeAddresses;
+
+    private String password;
+
+    private int database = 0;
+
+    /**
+     * 时钟漂移系数，锁的有效期会扣除租期乘以该系数的时间
+     */
+    private double clockDriftFactor = 0.01;
+
+    /**
+     * 单次加锁等待各节点响应的最长时间，单位：毫秒
+     */
+    private long responseTimeout = 100;
+
+    public String[] getNodeAddresses() {
+      return nodeAddresses;
+    }
+
+    public void setNodeAddresses(String[] nodeAddresses) {
+      this.nodeAddresses = nodeAddresses;
+    }
+
+    public String getPassword() {
+      return password;
+    }
+
+    public void setPassword(String password) {
+      this.password = password;
+    }
+
+    public int getDatabase() {
+      return database;
+    }
+
+    public void setDatabase(int database) {
+      this.database = database;
+    }
+
+    public double getClockDriftFactor() {
+      return clockDriftFactor;
+    }
+
+    public void setClockDriftFactor(double clockDriftFactor) {
+      this.clockDriftFactor = clockDriftFactor;
+    }
+
+    public long getResponseTimeout() {
+      return responseTimeout;
+    }
+
+    public void setResponseTimeout(long responseTimeout) {
+      this.responseTimeout = responseTimeout;
+    }
+  }
 }
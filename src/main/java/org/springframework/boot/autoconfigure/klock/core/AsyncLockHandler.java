@@ -0,0 +1,12 @@
+package org.springframework.boot.autoconfigure.klock.core;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 异步加锁执行的业务逻辑，返回的CompletionStage完成时释放锁
+ */
+@FunctionalInterface
+public interface AsyncLockHandler<T> {
+
+     CompletionStage<T> handle() throws Throwable;
+}
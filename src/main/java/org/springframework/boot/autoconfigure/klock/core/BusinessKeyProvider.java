@@ -1,15 +1,19 @@
 package org.springframework.boot.autoconfigure.klock.core;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.aspectj.lang.JoinPoint;
-import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.boot.autoconfigure.klock.annotation.Klock;
 import org.springframework.boot.autoconfigure.klock.annotation.KlockKey;
-import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.boot.autoconfigure.klock.config.KlockConfig;
 import org.springframework.core.DefaultParameterNameDiscoverer;
 import org.springframework.core.ParameterNameDiscoverer;
 import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.util.ObjectUtils;
@@ -18,28 +22,115 @@ import org.springframework.util.StringUtils;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by kl on 2018/1/24.
  * Content :获取用户定义业务key
+ * 解析后的SpEL表达式按(方法,表达式)缓存，编译模式开启时热点表达式会被编译为字节码
  */
 public class BusinessKeyProvider {
 
-    private ParameterNameDiscoverer nameDiscoverer = new DefaultParameterNameDiscoverer();
+    private final ParameterNameDiscoverer nameDiscoverer = new DefaultParameterNameDiscoverer();
 
-    private ExpressionParser parser = new SpelExpressionParser();
+    private final ExpressionParser parser;
+
+    private final Cache<ExpressionKey, Expression> expressionCache;
+
+    private final Map<Method, String[][]> variableNamesCache = new ConcurrentHashMap<>(64);
+
+    public BusinessKeyProvider() {
+        this(KlockConfig.DEFAULT_SPEL_COMPILER_MODE, KlockConfig.DEFAULT_EXPRESSION_CACHE_SIZE);
+    }
+
+    public BusinessKeyProvider(SpelCompilerMode compilerMode, int expressionCacheSize) {
+        this.parser = new SpelExpressionParser(
+                new SpelParserConfiguration(compilerMode, getClass().getClassLoader()));
+        this.expressionCache = Caffeine.newBuilder().maximumSize(expressionCacheSize).build();
+    }
 
     public String getKeyName(JoinPoint joinPoint, Klock klock) {
         List<String> keyList = new ArrayList<>();
         Method method = getMethod(joinPoint);
         List<String> definitionKeys = getSpelDefinitionKey(klock.keys(), method, joinPoint.getArgs());
         keyList.addAll(definitionKeys);
-        List<String> parameterKeys = getParameterKey(method.getParameters(), joinPoint.getArgs());
+        List<String> parameterKeys = getParameterKey(method, joinPoint.getArgs());
         keyList.addAll(parameterKeys);
         return StringUtils.collectionToDelimitedString(keyList,"","-","");
     }
 
+    /**
+     * 按预先解析的方法元数据计算业务key，只对参数做表达式求值
+     */
+    String getKeyName(LockMethodMetadata metadata, Object[] args) {
+        StringBuilder keyName = new StringBuilder();
+        Expression[] definitionKeys = metadata.getDefinitionKeys();
+        if (definitionKeys.length > 0) {
+            EvaluationContext context = createMethodContext(metadata.getMethod(), args);
+            for (Expression definitionKey : definitionKeys) {
+                appendKey(keyName, definitionKey.getValue(context));
+            }
+        }
+        int[] keyParameterIndexes = metadata.getKeyParameterIndexes();
+        Expression[] keyParameterExpressions = metadata.getKeyParameterExpressions();
+        for (int i = 0; i < keyParameterIndexes.length; i++) {
+            Object parameterValue = args[keyParameterIndexes[i]];
+            if (keyParameterExpressions[i] == null) {
+                appendKey(keyName, parameterValue);
+            } else {
+                appendKey(keyName, keyParameterExpressions[i].getValue(new StandardEvaluationContext(parameterValue)));
+            }
+        }
+        //去掉首个分隔符
+        return keyName.length() > 0 ? keyName.substring(1) : "";
+    }
+
+    /**
+     * 多key模式下计算各个业务key，集合和数组按元素展开，
+     * @KlockKey上的表达式作用于每个元素
+     */
+    List<String> getKeyNames(LockMethodMetadata metadata, Object[] args) {
+        List<String> keyNames = new ArrayList<>();
+        Expression[] definitionKeys = metadata.getDefinitionKeys();
+        if (definitionKeys.length > 0) {
+            EvaluationContext context = createMethodContext(metadata.getMethod(), args);
+            for (Expression definitionKey : definitionKeys) {
+                for (Object key : expand(definitionKey.getValue(context))) {
+                    keyNames.add(ObjectUtils.nullSafeToString(key));
+                }
+            }
+        }
+        int[] keyParameterIndexes = metadata.getKeyParameterIndexes();
+        Expression[] keyParameterExpressions = metadata.getKeyParameterExpressions();
+        for (int i = 0; i < keyParameterIndexes.length; i++) {
+            for (Object element : expand(args[keyParameterIndexes[i]])) {
+                Object key = keyParameterExpressions[i] == null ? element
+                        : keyParameterExpressions[i].getValue(new StandardEvaluationContext(element));
+                keyNames.add(ObjectUtils.nullSafeToString(key));
+            }
+        }
+        return keyNames;
+    }
+
+    private Collection<?> expand(Object value) {
+        if (value instanceof Collection) {
+            return (Collection<?>) value;
+        }
+        if (value instanceof Object[]) {
+            return Arrays.asList((Object[]) value);
+        }
+        return Collections.singletonList(value);
+    }
+
+    private void appendKey(StringBuilder keyName, Object key) {
+        keyName.append('-').append(ObjectUtils.nullSafeToString(key));
+    }
+
     private Method getMethod(JoinPoint joinPoint) {
         MethodSignature signature = (MethodSignature) joinPoint.getSignature();
         Method method = signature.getMethod();
@@ -56,17 +147,21 @@ public class BusinessKeyProvider {
 
     private List<String> getSpelDefinitionKey(String[] definitionKeys, Method method, Object[] parameterValues) {
         List<String> definitionKeyList = new ArrayList<>();
+        EvaluationContext context = null;
         for (String definitionKey : definitionKeys) {
             if (!ObjectUtils.isEmpty(definitionKey)) {
-                EvaluationContext context = new MethodBasedEvaluationContext(null, method, parameterValues, nameDiscoverer);
-                Object objKey = parser.parseExpression(definitionKey).getValue(context);
+                if (context == null) {
+                    context = createMethodContext(method, parameterValues);
+                }
+                Object objKey = getExpression(method, definitionKey).getValue(context);
                 definitionKeyList.add(ObjectUtils.nullSafeToString(objKey));
             }
         }
         return definitionKeyList;
     }
 
-    private List<String> getParameterKey(Parameter[] parameters, Object[] parameterValues) {
+    private List<String> getParameterKey(Method method, Object[] parameterValues) {
+        Parameter[] parameters = method.getParameters();
         List<String> parameterKey = new ArrayList<>();
         for (int i = 0; i < parameters.length; i++) {
             if (parameters[i].getAnnotation(KlockKey.class) != null) {
@@ -76,11 +171,76 @@ public class BusinessKeyProvider {
                     parameterKey.add(ObjectUtils.nullSafeToString(parameterValue));
                 } else {
                     StandardEvaluationContext context = new StandardEvaluationContext(parameterValues[i]);
-                    Object key = parser.parseExpression(keyAnnotation.value()).getValue(context);
+                    Object key = getExpression(method, keyAnnotation.value()).getValue(context);
                     parameterKey.add(ObjectUtils.nullSafeToString(key));
                 }
             }
         }
         return parameterKey;
     }
+
+    /**
+     * 获取缓存的表达式，未命中时解析并放入缓存
+     */
+    Expression getExpression(Method method, String expression) {
+        return expressionCache.get(new ExpressionKey(method, expression),
+                key -> parser.parseExpression(key.expression));
+    }
+
+    /**
+     * 构建方法参数的SpEL上下文，与MethodBasedEvaluationContext一致支持#a0、#p0及参数名引用，
+     * 变量名按方法缓存，不再每次调用都解析参数名
+     */
+    EvaluationContext createMethodContext(Method method, Object[] parameterValues) {
+        StandardEvaluationContext context = new StandardEvaluationContext();
+        String[][] variableNames = variableNamesCache.computeIfAbsent(method, this::resolveVariableNames);
+        for (int i = 0; i < parameterValues.length && i < variableNames.length; i++) {
+            for (String variableName : variableNames[i]) {
+                context.setVariable(variableName, parameterValues[i]);
+            }
+        }
+        return context;
+    }
+
+    private String[][] resolveVariableNames(Method method) {
+        String[] parameterNames = nameDiscoverer.getParameterNames(method);
+        String[][] variableNames = new String[method.getParameterCount()][];
+        for (int i = 0; i < variableNames.length; i++) {
+            if (parameterNames != null && i < parameterNames.length) {
+                variableNames[i] = new String[]{"a" + i, "p" + i, parameterNames[i]};
+            } else {
+                variableNames[i] = new String[]{"a" + i, "p" + i};
+            }
+        }
+        return variableNames;
+    }
+
+    private static final class ExpressionKey {
+
+        private final Method method;
+
+        private final String expression;
+
+        ExpressionKey(Method method, String expression) {
+            this.method = method;
+            this.expression = expression;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof ExpressionKey)) {
+                return false;
+            }
+            ExpressionKey that = (ExpressionKey) other;
+            return method.equals(that.method) && expression.equals(that.expression);
+        }
+
+        @Override
+        public int hashCode() {
+            return method.hashCode() * 31 + expression.hashCode();
+        }
+    }
 }
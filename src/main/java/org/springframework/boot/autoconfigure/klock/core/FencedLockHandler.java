@@ -0,0 +1,10 @@
+package org.springframework.boot.autoconfigure.klock.core;
+
+/**
+ * 持有锁时执行的业务，参数为本次加锁获得的fencing token
+ */
+@FunctionalInterface
+public interface FencedLockHandler<T> {
+
+    T handle(long fencingToken) throws Throwable;
+}
@@ -4,6 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.klock.annotation.Klock;
 import org.springframework.boot.autoconfigure.klock.lock.LockFactory;
@@ -30,17 +31,46 @@ public class KlockAspectHandler {
     @Autowired
     private RedisLockClient redisLockClient;
 
+    @Autowired(required = false)
+    private ReactiveLockSupport reactiveLockSupport;
+
+    @Autowired
+    private SingleFlightResults singleFlightResults;
+
 
     @Around(value = "@annotation(klock)")
     public Object around(ProceedingJoinPoint joinPoint, Klock klock) throws Throwable {
+        LockInfo lockInfo = lockInfoProvider.get(joinPoint, klock);
+
+        //返回Mono/Flux的方法，锁需要在订阅结束时才释放
+        Class<?> returnType = ((MethodSignature) joinPoint.getSignature()).getReturnType();
+        if (reactiveLockSupport != null && reactiveLockSupport.supports(returnType)) {
+            return reactiveLockSupport.lock(joinPoint, lockInfo, returnType);
+        }
+
+        //把本次加锁的fencing token替换到@FencingToken参数上
+        if (lockInfo.isFenced()) {
+            int fencingTokenIndex = lockInfoProvider.getMetadata(joinPoint, klock).getFencingTokenIndex();
+            Object[] args = joinPoint.getArgs();
+            return redisLockClient.doLock(fencingToken -> {
+                args[fencingTokenIndex] = fencingToken;
+                return joinPoint.proceed(args);
+            }, lockInfo);
+        }
+
+        //等待者在等待锁期间收到持锁者发布的结果时直接返回
+        if (lockInfo.isSingleFlight()) {
+            return singleFlightResults.lock(lockInfo, joinPoint::proceed);
+        }
+
+        if (!log.isTraceEnabled()) {
+            return redisLockClient.lock(joinPoint::proceed, lockInfo);
+        }
+
         log.trace("start=====around=======");
         long start = System.nanoTime();
-
-        LockInfo lockInfo = lockInfoProvider.get(joinPoint, klock);
         Object result = redisLockClient.lock(joinPoint::proceed, lockInfo);
-
-        long end = System.nanoTime();
-        log.trace("distributed lockable cost:" + (end - start) + "ns");
+        log.trace("distributed lockable cost:{}ns", System.nanoTime() - start);
         log.trace("end======around======");
         return result;
     }
@@ -0,0 +1,117 @@
+package org.springframework.boot.autoconfigure.klock.core;
+
+import org.springframework.boot.autoconfigure.klock.lock.Lock;
+import org.springframework.boot.autoconfigure.klock.metrics.HeldLockRegistry;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一次加锁的持有凭证，持有者是加锁时生成的ownerId而不是线程，
+ * 可在任意线程（包括虚拟线程、回调线程）中释放、续期和查询，同一凭证只会释放一次
+ *
+ * @author kl
+ */
+public class LockHandle {
+
+    private final RedisLockClient redisLockClient;
+
+    private final LockInfo lockInfo;
+
+    private final Lock lock;
+
+    private final long ownerId;
+
+    private final long acquiredAt = System.nanoTime();
+
+    private final HeldLockRegistry.HeldLock held;
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    LockHandle(RedisLockClient redisLockClient, LockInfo lockInfo, Lock lock, long ownerId) {
+        this.redisLockClient = redisLockClient;
+        this.lockInfo = lockInfo;
+        this.lock = lock;
+        this.ownerId = ownerId;
+        this.held = redisLockClient.registerHeld(lockInfo, lock, ownerId);
+    }
+
+    public String getLockName() {
+        return lockInfo.getLockName();
+    }
+
+    public long getOwnerId() {
+        return ownerId;
+    }
+
+    public long getFencingToken() {
+        return lock.getFencingToken();
+    }
+
+    /**
+     * 释放锁，释放失败时不执行releaseTimeoutStrategy，由调用方按返回结果处理
+     */
+    public ReleaseResult release() {
+        return join(releaseAsync());
+    }
+
+    /**
+     * 异步释放锁，重复释放返回NOT_OWNER
+     */
+    public CompletionStage<ReleaseResult> releaseAsync() {
+        if (!released.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(ReleaseResult.NOT_OWNER);
+        }
+        redisLockClient.unregisterHeld(held);
+        return lock.unlockAsync(ownerId).thenApply(result -> {
+            redisLockClient.recordHold(lockInfo, System.nanoTime() - acquiredAt);
+            if (!result.isReleased()) {
+                redisLockClient.getKlockMetrics().recordReleaseFailure(lockInfo);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * 把租期延长为锁信息中的租期，用于租期不为-1且业务超出预期时间的场景
+     *
+     * @return 是否续期成功，锁已超时或已释放时为false
+     */
+    public boolean renew() {
+        return join(renewAsync());
+    }
+
+    public CompletionStage<Boolean> renewAsync() {
+        if (released.get()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return lock.renewAsync(ownerId);
+    }
+
+    public boolean isHeld() {
+        return join(isHeldAsync());
+    }
+
+    public CompletionStage<Boolean> isHeldAsync() {
+        if (released.get()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return lock.isHeldAsync(ownerId);
+    }
+
+    /**
+     * 与RedisLockClient.acquire一致，同步方法抛出异步操作的原始异常
+     */
+    private static <T> T join(CompletionStage<T> stage) {
+        try {
+            return stage.toCompletableFuture().join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+        }
+    }
+}
@@ -1,16 +1,35 @@
 package org.springframework.boot.autoconfigure.klock.core;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.klock.annotation.FencingToken;
 import org.springframework.boot.autoconfigure.klock.annotation.Klock;
+import org.springframework.boot.autoconfigure.klock.annotation.KlockKey;
 import org.springframework.boot.autoconfigure.klock.config.KlockConfig;
 import org.springframework.boot.autoconfigure.klock.handler.KlockInvocationException;
+import org.springframework.boot.autoconfigure.klock.model.LeaseEstimator;
 import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.LockTimeoutStrategy;
 import org.springframework.boot.autoconfigure.klock.model.LockType;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseTimeoutStrategy;
+import org.springframework.core.MethodClassKey;
+import org.springframework.expression.Expression;
+import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
 /**
@@ -21,6 +40,10 @@ public class LockInfoProvider {
 
   private static final String LOCK_NAME_PREFIX = "lock";
   private static final String LOCK_NAME_SEPARATOR = ".";
+  private static final String REACTOR_PACKAGE = "reactor.core.publisher.";
+
+  private static final MethodType HANDLER_TYPE = MethodType
+      .methodType(Object.class, Object.class, Object[].class);
 
 
   @Autowired
@@ -29,102 +52,227 @@ public class LockInfoProvider {
   @Autowired
   private BusinessKeyProvider businessKeyProvider;
 
+  /**
+   * 每个(方法,目标类)的静态元数据，数量受限于加了@Klock的方法数
+   */
+  private final Map<MethodClassKey, LockMethodMetadata> metadataCache = new ConcurrentHashMap<>(64);
+
   LockInfo get(JoinPoint joinPoint, Klock klock) {
-    MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-    LockType type = klock.lockType();
-    String businessKeyName = businessKeyProvider.getKeyName(joinPoint, klock);
+    LockMethodMetadata metadata = getMetadata(joinPoint, klock);
+    Object[] args = joinPoint.getArgs();
     //锁的名字，锁的粒度就是这里控制的
-    String lockName = LOCK_NAME_PREFIX + LOCK_NAME_SEPARATOR + getLockName(klock.name(), signature)
-        + businessKeyName;
-    long waitTime = getWaitTime(klock);
-    long leaseTime = getLeaseTime(klock);
-
-    String customLockTimeoutStrategy = klock.customLockTimeoutStrategy();
+    String lockName;
+    List<String> lockNames = null;
+    if (metadata.isMultiKey() && metadata.hasBusinessKeys()) {
+      //多key模式下每个业务key单独加锁，排序去重保证所有调用方按相同顺序加锁
+      Set<String> sortedNames = new TreeSet<>();
+      for (String keyName : businessKeyProvider.getKeyNames(metadata, args)) {
+        sortedNames.add(metadata.getLockNamePrefix() + keyName);
+      }
+      lockNames = sortedNames.isEmpty() ? Collections.singletonList(metadata.getLockNamePrefix())
+          : new ArrayList<>(sortedNames);
+      lockName = StringUtils.collectionToDelimitedString(lockNames, ",");
+    } else {
+      lockName = metadata.hasBusinessKeys()
+          ? metadata.getLockNamePrefix() + businessKeyProvider.getKeyName(metadata, args)
+          : metadata.getLockNamePrefix();
+    }
 
     LockHandler customLockTimeoutHandler = null;
-    if (StringUtils.hasLength(customLockTimeoutStrategy)) {
-      customLockTimeoutHandler = () -> handleCustomLockTimeout(customLockTimeoutStrategy,
-          joinPoint);
+    if (metadata.hasCustomLockTimeoutHandler()) {
+      Object target = joinPoint.getTarget();
+      customLockTimeoutHandler = () -> metadata.invokeCustomLockTimeoutHandler(target, args);
     }
 
-    String customReleaseTimeoutStrategy = klock.customReleaseTimeoutStrategy();
     LockHandler customReleaseTimeoutHandler = null;
-    if (StringUtils.hasLength(customReleaseTimeoutStrategy)) {
-      customReleaseTimeoutHandler = () -> handleCustomReleaseTimeout(customReleaseTimeoutStrategy,
-          joinPoint);
+    if (metadata.hasCustomReleaseTimeoutHandler()) {
+      Object target = joinPoint.getTarget();
+      customReleaseTimeoutHandler = () -> metadata.invokeCustomReleaseTimeoutHandler(target, args);
     }
 
-    return getLockInfo(type, lockName, waitTime, customLockTimeoutHandler,
-        leaseTime, customReleaseTimeoutHandler);
+    LockInfo lockInfo = getLockInfo(metadata.getLockType(), lockName,
+        metadata.getWaitTime(), metadata.getLockTimeoutStrategy(), customLockTimeoutHandler,
+        metadata.getEffectiveLeaseTime(), metadata.getReleaseTimeoutStrategy(), customReleaseTimeoutHandler);
+    lockInfo.setNameTemplate(metadata.getLockNamePrefix());
+    lockInfo.setLockNames(lockNames);
+    lockInfo.setFenced(metadata.isFenced());
+    lockInfo.setPermits(metadata.getPermits());
+    lockInfo.setSingleFlight(metadata.isSingleFlight());
+    lockInfo.setLeaseEstimator(metadata.getLeaseEstimator());
+    return lockInfo;
   }
 
   /**
-   * 处理自定义加锁超时
+   * 获取方法的锁元数据，首次调用时解析注解并缓存
    */
-  private Object handleCustomLockTimeout(String lockTimeoutHandler, JoinPoint joinPoint)
-      throws Throwable {
+  LockMethodMetadata getMetadata(JoinPoint joinPoint, Klock klock) {
+    MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+    Class<?> targetClass = joinPoint.getTarget() != null ? joinPoint.getTarget().getClass() : null;
+    MethodClassKey cacheKey = new MethodClassKey(signature.getMethod(), targetClass);
+    LockMethodMetadata metadata = metadataCache.get(cacheKey);
+    if (metadata == null) {
+      metadata = metadataCache.computeIfAbsent(cacheKey,
+          key -> buildMetadata(signature, targetClass, klock));
+    }
+    return metadata;
+  }
 
-    // prepare invocation context
-    Method currentMethod = ((MethodSignature) joinPoint.getSignature()).getMethod();
-    Object target = joinPoint.getTarget();
-    Method handleMethod = null;
-    try {
-      handleMethod = joinPoint.getTarget().getClass()
-          .getDeclaredMethod(lockTimeoutHandler, currentMethod.getParameterTypes());
-      handleMethod.setAccessible(true);
-    } catch (NoSuchMethodException e) {
-      throw new IllegalArgumentException("Illegal annotation param customLockTimeoutStrategy", e);
+  private LockMethodMetadata buildMetadata(MethodSignature signature, Class<?> targetClass,
+      Klock klock) {
+    Method method = resolveTargetMethod(signature, targetClass);
+    if (klock.multiKey() && klock.lockType() != LockType.Reentrant) {
+      throw new IllegalArgumentException("Illegal annotation param multiKey, only supported by "
+          + LockType.Reentrant + " lock: " + method);
     }
-    Object[] args = joinPoint.getArgs();
+    if (klock.permits() < 1) {
+      throw new IllegalArgumentException("Illegal annotation param permits, must be positive: " + method);
+    }
+    String lockNamePrefix = LOCK_NAME_PREFIX + LOCK_NAME_SEPARATOR + getLockName(klock.name(),
+        signature);
 
-    // invoke
-    Object res = null;
-    try {
-      res = handleMethod.invoke(target, args);
-    } catch (IllegalAccessException e) {
-      throw new KlockInvocationException(
-          "Fail to invoke custom lock timeout handler: " + lockTimeoutHandler, e);
-    } catch (InvocationTargetException e) {
-      throw e.getTargetException();
+    List<Expression> definitionKeys = new ArrayList<>();
+    for (String definitionKey : klock.keys()) {
+      if (!ObjectUtils.isEmpty(definitionKey)) {
+        definitionKeys.add(businessKeyProvider.getExpression(method, definitionKey));
+      }
+    }
+
+    Parameter[] parameters = method.getParameters();
+    List<Integer> keyParameterIndexes = new ArrayList<>();
+    List<Expression> keyParameterExpressions = new ArrayList<>();
+    int fencingTokenIndex = -1;
+    for (int i = 0; i < parameters.length; i++) {
+      if (parameters[i].isAnnotationPresent(FencingToken.class)) {
+        fencingTokenIndex = resolveFencingTokenIndex(method, klock, parameters[i], i, fencingTokenIndex);
+      }
+      KlockKey keyAnnotation = parameters[i].getAnnotation(KlockKey.class);
+      if (keyAnnotation != null) {
+        keyParameterIndexes.add(i);
+        keyParameterExpressions.add(keyAnnotation.value().isEmpty() ? null
+            : businessKeyProvider.getExpression(method, keyAnnotation.value()));
+      }
+    }
+
+    if (klock.singleFlight() && (fencingTokenIndex >= 0
+        || method.getReturnType().getName().startsWith(REACTOR_PACKAGE))) {
+      throw new IllegalArgumentException("Illegal annotation param singleFlight, "
+          + "not supported by reactive method or @FencingToken: " + method);
+    }
+
+    long leaseTime = getLeaseTime(klock);
+    //共享的读锁由看门狗续期到最后一个本地读者离开，读者各自的租期不生效
+    if (klock.lockType() == LockType.Read && leaseTime >= 0
+        && klockConfig.getReadLockSharing().isEnabled()) {
+      log.warn("Read lock sharing is enabled, leaseTime {} of {} is ignored and the shared read lock "
+          + "is renewed by watchdog until the last local reader leaves", leaseTime, method);
+    }
+    LeaseEstimator leaseEstimator = null;
+    if (klock.adaptiveLease()) {
+      if (leaseTime < 0) {
+        throw new IllegalArgumentException("Illegal annotation param adaptiveLease, "
+            + "not supported by leaseTime -1: " + method);
+      }
+      KlockConfig.AdaptiveLease adaptiveLease = klockConfig.getAdaptiveLease();
+      leaseEstimator = new LeaseEstimator(adaptiveLease.getPercentile(), adaptiveLease.getHeadroom(),
+          Math.min(adaptiveLease.getMinLeaseTime(), leaseTime), leaseTime, adaptiveLease.getMinSamples());
+    }
+
+    MethodHandle customLockTimeoutHandle = null;
+    if (StringUtils.hasLength(klock.customLockTimeoutStrategy())) {
+      customLockTimeoutHandle = resolveHandler(targetClass, signature.getMethod(),
+          klock.customLockTimeoutStrategy(), "customLockTimeoutStrategy");
+    }
+    MethodHandle customReleaseTimeoutHandle = null;
+    if (StringUtils.hasLength(klock.customReleaseTimeoutStrategy())) {
+      customReleaseTimeoutHandle = resolveHandler(targetClass, signature.getMethod(),
+          klock.customReleaseTimeoutStrategy(), "customReleaseTimeoutStrategy");
     }
 
-    return res;
+    return new LockMethodMetadata(method, lockNamePrefix, klock.lockType(),
+        getWaitTime(klock), leaseTime,
+        klock.lockTimeoutStrategy(), klock.releaseTimeoutStrategy(),
+        definitionKeys.toArray(new Expression[0]),
+        keyParameterIndexes.stream().mapToInt(Integer::intValue).toArray(),
+        keyParameterExpressions.toArray(new Expression[0]),
+        customLockTimeoutHandle, customReleaseTimeoutHandle, klock.multiKey(), fencingTokenIndex,
+        klock.permits(), klock.singleFlight(), leaseEstimator);
   }
 
   /**
-   * 处理自定义释放锁时已超时
+   * 校验@FencingToken参数，只能有一个long参数，且只支持非响应式方法上的单key可重入锁
    */
-  private Object handleCustomReleaseTimeout(String releaseTimeoutHandler, JoinPoint joinPoint)
-      throws Throwable {
+  private int resolveFencingTokenIndex(Method method, Klock klock, Parameter parameter, int index,
+      int previousIndex) {
+    Class<?> type = parameter.getType();
+    if (previousIndex >= 0 || (type != long.class && type != Long.class)) {
+      throw new IllegalArgumentException(
+          "Illegal @FencingToken parameter, expect a single long parameter: " + method);
+    }
+    if (klock.lockType() != LockType.Reentrant || klock.multiKey()) {
+      throw new IllegalArgumentException(
+          "Illegal @FencingToken parameter, only supported by single key Reentrant lock: " + method);
+    }
+    if (method.getReturnType().getName().startsWith(REACTOR_PACKAGE)) {
+      throw new IllegalArgumentException(
+          "Illegal @FencingToken parameter, not supported by reactive method: " + method);
+    }
+    return index;
+  }
 
-    Method currentMethod = ((MethodSignature) joinPoint.getSignature()).getMethod();
-    Object target = joinPoint.getTarget();
-    Method handleMethod = null;
+  /**
+   * 接口上声明的方法解析为目标类上的实现方法，参数注解以实现类为准
+   */
+  private Method resolveTargetMethod(MethodSignature signature, Class<?> targetClass) {
+    Method method = signature.getMethod();
+    if (method.getDeclaringClass().isInterface() && targetClass != null) {
+      try {
+        method = targetClass.getDeclaredMethod(signature.getName(), method.getParameterTypes());
+      } catch (NoSuchMethodException e) {
+        log.warn("Fail to resolve method {} on target class {}, fall back to the interface method",
+            signature.getName(), targetClass.getName());
+      }
+    }
+    return method;
+  }
+
+  /**
+   * 解析自定义超时处理方法，预先绑定为(Object target, Object[] args)Object 的MethodHandle
+   */
+  private MethodHandle resolveHandler(Class<?> targetClass, Method currentMethod,
+      String handlerName, String annotationParam) {
+    Method handleMethod;
     try {
-      handleMethod = joinPoint.getTarget().getClass()
-          .getDeclaredMethod(releaseTimeoutHandler, currentMethod.getParameterTypes());
+      handleMethod = targetClass.getDeclaredMethod(handlerName, currentMethod.getParameterTypes());
       handleMethod.setAccessible(true);
     } catch (NoSuchMethodException e) {
-      throw new IllegalArgumentException("Illegal annotation param customReleaseTimeoutStrategy",
-          e);
+      throw new IllegalArgumentException("Illegal annotation param " + annotationParam, e);
     }
-    Object[] args = joinPoint.getArgs();
 
+    MethodHandle handle;
     try {
-      handleMethod.invoke(target, args);
+      handle = MethodHandles.lookup().unreflect(handleMethod);
     } catch (IllegalAccessException e) {
-      throw new KlockInvocationException(
-          "Fail to invoke custom release timeout handler: " + releaseTimeoutHandler, e);
-    } catch (InvocationTargetException e) {
-      throw e.getTargetException();
+      throw new KlockInvocationException("Fail to access custom handler: " + handlerName, e);
+    }
+    if (Modifier.isStatic(handleMethod.getModifiers())) {
+      handle = MethodHandles.dropArguments(handle, 0, Object.class);
     }
-    return args;
+    return handle.asSpreader(Object[].class, handleMethod.getParameterCount())
+        .asType(HANDLER_TYPE);
   }
 
 
   public LockInfo getLockInfo(LockType type, String lockName, long waitTime,
       LockHandler customLockTimeoutHandler
       , long leaseTime, LockHandler customReleaseTimeoutHandler) {
+    return getLockInfo(type, lockName, waitTime, null, customLockTimeoutHandler,
+        leaseTime, null, customReleaseTimeoutHandler);
+  }
+
+  public LockInfo getLockInfo(LockType type, String lockName,
+      long waitTime, LockTimeoutStrategy lockTimeoutStrategy, LockHandler customLockTimeoutHandler,
+      long leaseTime, ReleaseTimeoutStrategy releaseTimeoutStrategy,
+      LockHandler customReleaseTimeoutHandler) {
     //如果占用锁的时间设计不合理，则打印相应的警告提示
     if (leaseTime == -1 && log.isWarnEnabled()) {
       log.warn("Trying to acquire Lock({}) with no expiration, " +
@@ -132,8 +280,8 @@ public class LockInfoProvider {
           +
           "This may cause dead lock in some circumstances.", lockName);
     }
-    return new LockInfo(type, lockName, waitTime, customLockTimeoutHandler, leaseTime,
-        customReleaseTimeoutHandler);
+    return new LockInfo(type, lockName, waitTime, lockTimeoutStrategy, leaseTime,
+        releaseTimeoutStrategy, customLockTimeoutHandler, customReleaseTimeoutHandler);
   }
 
   /**
@@ -145,8 +293,7 @@ public class LockInfoProvider {
    */
   private String getLockName(String annotationName, MethodSignature signature) {
     if (annotationName.isEmpty()) {
-      return String
-          .format("%s.%s", signature.getDeclaringTypeName(), signature.getMethod().getName());
+      return signature.getDeclaringTypeName() + LOCK_NAME_SEPARATOR + signature.getMethod().getName();
     } else {
       return annotationName;
     }
@@ -0,0 +1,213 @@
+package org.springframework.boot.autoconfigure.klock.core;
+
+import org.springframework.boot.autoconfigure.klock.model.LeaseEstimator;
+import org.springframework.boot.autoconfigure.klock.model.LockTimeoutStrategy;
+import org.springframework.boot.autoconfigure.klock.model.LockType;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseTimeoutStrategy;
+import org.springframework.expression.Expression;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+
+/**
+ * 加锁方法的静态元数据，每个方法只解析一次并缓存，
+ * 每次调用只需计算动态的业务key部分
+ *
+ * @author kl
+ */
+final class LockMethodMetadata {
+
+    private static final int[] NO_INDEXES = new int[0];
+
+    private static final Expression[] NO_EXPRESSIONS = new Expression[0];
+
+    /**
+     * 实际执行的目标方法，接口方法已解析为实现类方法
+     */
+    private final Method method;
+
+    /**
+     * 锁名称中不随参数变化的部分，如 lock.com.x.Service.method
+     */
+    private final String lockNamePrefix;
+
+    private final LockType lockType;
+
+    private final long waitTime;
+
+    private final long leaseTime;
+
+    private final LockTimeoutStrategy lockTimeoutStrategy;
+
+    private final ReleaseTimeoutStrategy releaseTimeoutStrategy;
+
+    /**
+     * Klock.keys()解析后的表达式
+     */
+    private final Expression[] definitionKeys;
+
+    /**
+     * 标注了@KlockKey的参数下标
+     */
+    private final int[] keyParameterIndexes;
+
+    /**
+     * 与keyParameterIndexes一一对应，@KlockKey未指定表达式时为null
+     */
+    private final Expression[] keyParameterExpressions;
+
+    /**
+     * 自定义加锁超时处理方法，签名为(Object target, Object[] args)Object
+     */
+    private final MethodHandle customLockTimeoutHandle;
+
+    /**
+     * 自定义释放锁超时处理方法，签名为(Object target, Object[] args)Object
+     */
+    private final MethodHandle customReleaseTimeoutHandle;
+
+    /**
+     * 是否每个业务key单独加锁
+     */
+    private final boolean multiKey;
+
+    /**
+     * 标注了@FencingToken的参数下标，没有时为-1
+     */
+    private final int fencingTokenIndex;
+
+    /**
+     * Semaphore锁的许可总数
+     */
+    private final int permits;
+
+    /**
+     * 是否共享持锁者的返回值
+     */
+    private final boolean singleFlight;
+
+    /**
+     * 自适应租期的估算器，未开启时为null
+     */
+    private final LeaseEstimator leaseEstimator;
+
+    LockMethodMetadata(Method method, String lockNamePrefix, LockType lockType,
+                       long waitTime, long leaseTime,
+                       LockTimeoutStrategy lockTimeoutStrategy, ReleaseTimeoutStrategy releaseTimeoutStrategy,
+                       Expression[] definitionKeys, int[] keyParameterIndexes, Expression[] keyParameterExpressions,
+                       MethodHandle customLockTimeoutHandle, MethodHandle customReleaseTimeoutHandle,
+                       boolean multiKey, int fencingTokenIndex, int permits, boolean singleFlight,
+                       LeaseEstimator leaseEstimator) {
+        this.method = method;
+        this.lockNamePrefix = lockNamePrefix;
+        this.lockType = lockType;
+        this.waitTime = waitTime;
+        this.leaseTime = leaseTime;
+        this.lockTimeoutStrategy = lockTimeoutStrategy;
+        this.releaseTimeoutStrategy = releaseTimeoutStrategy;
+        this.definitionKeys = definitionKeys != null ? definitionKeys : NO_EXPRESSIONS;
+        this.keyParameterIndexes = keyParameterIndexes != null ? keyParameterIndexes : NO_INDEXES;
+        this.keyParameterExpressions = keyParameterExpressions != null ? keyParameterExpressions : NO_EXPRESSIONS;
+        this.customLockTimeoutHandle = customLockTimeoutHandle;
+        this.customReleaseTimeoutHandle = customReleaseTimeoutHandle;
+        this.multiKey = multiKey;
+        this.fencingTokenIndex = fencingTokenIndex;
+        this.permits = permits;
+        this.singleFlight = singleFlight;
+        this.leaseEstimator = leaseEstimator;
+    }
+
+    Method getMethod() {
+        return method;
+    }
+
+    String getLockNamePrefix() {
+        return lockNamePrefix;
+    }
+
+    LockType getLockType() {
+        return lockType;
+    }
+
+    long getWaitTime() {
+        return waitTime;
+    }
+
+    long getLeaseTime() {
+        return leaseTime;
+    }
+
+    LockTimeoutStrategy getLockTimeoutStrategy() {
+        return lockTimeoutStrategy;
+    }
+
+    ReleaseTimeoutStrategy getReleaseTimeoutStrategy() {
+        return releaseTimeoutStrategy;
+    }
+
+    Expression[] getDefinitionKeys() {
+        return definitionKeys;
+    }
+
+    int[] getKeyParameterIndexes() {
+        return keyParameterIndexes;
+    }
+
+    Expression[] getKeyParameterExpressions() {
+        return keyParameterExpressions;
+    }
+
+    boolean isMultiKey() {
+        return multiKey;
+    }
+
+    int getFencingTokenIndex() {
+        return fencingTokenIndex;
+    }
+
+    int getPermits() {
+        return permits;
+    }
+
+    boolean isSingleFlight() {
+        return singleFlight;
+    }
+
+    LeaseEstimator getLeaseEstimator() {
+        return leaseEstimator;
+    }
+
+    /**
+     * 本次调用使用的租期，开启自适应租期时取估算值
+     */
+    long getEffectiveLeaseTime() {
+        return leaseEstimator != null ? leaseEstimator.getLeaseTime() : leaseTime;
+    }
+
+    boolean isFenced() {
+        return fencingTokenIndex >= 0;
+    }
+
+    /**
+     * 是否包含随参数变化的业务key
+     */
+    boolean hasBusinessKeys() {
+        return definitionKeys.length > 0 || keyParameterIndexes.length > 0;
+    }
+
+    boolean hasCustomLockTimeoutHandler() {
+        return customLockTimeoutHandle != null;
+    }
+
+    boolean hasCustomReleaseTimeoutHandler() {
+        return customReleaseTimeoutHandle != null;
+    }
+
+    Object invokeCustomLockTimeoutHandler(Object target, Object[] args) throws Throwable {
+        return (Object) customLockTimeoutHandle.invokeExact(target, args);
+    }
+
+    Object invokeCustomReleaseTimeoutHandler(Object target, Object[] args) throws Throwable {
+        return (Object) customReleaseTimeoutHandle.invokeExact(target, args);
+    }
+}
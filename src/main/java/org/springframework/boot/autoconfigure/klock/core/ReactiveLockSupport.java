@@ -0,0 +1,235 @@
+package org.springframework.boot.autoconfigure.klock.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.klock.handler.KlockTimeoutException;
+import org.springframework.boot.autoconfigure.klock.lock.Lock;
+import org.springframework.boot.autoconfigure.klock.lock.LockFactory;
+import org.springframework.boot.autoconfigure.klock.metrics.HeldLockRegistry;
+import org.springframework.boot.autoconfigure.klock.metrics.KlockMetrics;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.LockTimeoutStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 返回Mono/Flux的方法的加锁支持。
+ * 订阅时异步获取锁，锁在流完成、出错或取消时释放，整个过程不阻塞事件循环线程
+ *
+ * @author kl
+ */
+@Slf4j
+public class ReactiveLockSupport {
+
+    private static final String CUSTOM_STRATEGY = "CUSTOM";
+
+    @Autowired
+    private LockFactory lockFactory;
+
+    @Autowired
+    private RedisLockClient redisLockClient;
+
+    /**
+     * 是否为支持的响应式返回类型
+     */
+    public boolean supports(Class<?> returnType) {
+        return Mono.class.isAssignableFrom(returnType) || Flux.class.isAssignableFrom(returnType);
+    }
+
+    /**
+     * 对响应式方法加锁，返回与方法声明一致的Mono或Flux
+     */
+    @SuppressWarnings("unchecked")
+    public Object lock(ProceedingJoinPoint joinPoint, LockInfo lockInfo, Class<?> returnType) {
+        Flux<Object> locked = Flux.defer(() -> lock(() -> (Publisher<Object>) joinPoint.proceed(), lockInfo));
+        return Mono.class.isAssignableFrom(returnType) ? locked.singleOrEmpty() : locked;
+    }
+
+    /**
+     * 加锁订阅source，source在获得锁之后才会被调用
+     */
+    public <T> Flux<T> lock(LockHandler<? extends Publisher<T>> source, LockInfo lockInfo) {
+        ReactiveLease lease = new ReactiveLease(lockFactory.getLock(lockInfo), RedisLockClient.nextOwnerId());
+        long start = System.nanoTime();
+        return acquire(lockInfo, lease).flatMapMany(acquired -> {
+            getKlockMetrics().recordAcquire(lockInfo, System.nanoTime() - start, acquired);
+            return acquired ? proceedLocked(source, lockInfo, lease) : handleLockTimeout(source, lockInfo, lease);
+        });
+    }
+
+    /**
+     * 异步获取锁，获取过程中被取消时，在获取完成后立即释放
+     */
+    private Mono<Boolean> acquire(LockInfo lockInfo, ReactiveLease lease) {
+        return acquire(lockInfo, lease, lease.lock.acquireAsync(lease.ownerId).toCompletableFuture());
+    }
+
+    private Mono<Boolean> acquire(LockInfo lockInfo, ReactiveLease lease, long waitNanos) {
+        return acquire(lockInfo, lease,
+                lease.lock.acquireAsync(lease.ownerId, waitNanos, TimeUnit.NANOSECONDS).toCompletableFuture());
+    }
+
+    private Mono<Boolean> acquire(LockInfo lockInfo, ReactiveLease lease, CompletableFuture<Boolean> acquiring) {
+        return Mono.fromFuture(acquiring)
+                .doOnCancel(() -> acquiring.thenAccept(acquired -> {
+                    if (acquired) {
+                        lease.acquiredAt = System.nanoTime();
+                        releaseQuietly(lockInfo, lease);
+                    }
+                }));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Flux<T> handleLockTimeout(LockHandler<? extends Publisher<T>> source, LockInfo lockInfo,
+                                          ReactiveLease lease) {
+        log.trace("Timeout while acquiring Lock({})", lockInfo.getLockName());
+        try {
+            if (lockInfo.getCustomLockTimeoutHandler() != null) {
+                getKlockMetrics().recordAcquireFailure(lockInfo, CUSTOM_STRATEGY);
+                return Flux.from((Publisher<T>) lockInfo.getCustomLockTimeoutHandler().handle());
+            }
+            LockTimeoutStrategy strategy = lockInfo.getLockTimeoutStrategy();
+            getKlockMetrics().recordAcquireFailure(lockInfo, strategy.name());
+            if (strategy == LockTimeoutStrategy.KEEP_ACQUIRE) {
+                return retryAcquire(source, lockInfo, lease, LockTimeoutStrategy.KEEP_ACQUIRE_INTERVAL);
+            }
+            if (strategy == LockTimeoutStrategy.KEEP_ACQUIRE_NOTIFIED) {
+                long deadline = System.nanoTime()
+                        + TimeUnit.MILLISECONDS.toNanos(LockTimeoutStrategy.KEEP_ACQUIRE_NOTIFIED_TIMEOUT);
+                return awaitAcquire(source, lockInfo, lease, deadline);
+            }
+            //NO_OPERATION直接返回，FAIL_FAST抛出异常
+            strategy.handle(lockInfo, lease.lock);
+            return invoke(source);
+        } catch (Throwable e) {
+            return Flux.error(e);
+        }
+    }
+
+    private <T> Flux<T> retryAcquire(LockHandler<? extends Publisher<T>> source, LockInfo lockInfo,
+                                     ReactiveLease lease, long interval) {
+        if (interval > LockTimeoutStrategy.KEEP_ACQUIRE_MAX_INTERVAL) {
+            return Flux.error(new KlockTimeoutException(String.format(
+                    "Failed to acquire Lock(%s) after too many times, this may because dead lock occurs.",
+                    lockInfo.getLockName())));
+        }
+        return Mono.delay(Duration.ofMillis(interval))
+                .then(Mono.defer(() -> {
+                    getKlockMetrics().recordRetry(lockInfo);
+                    return acquire(lockInfo, lease);
+                }))
+                .flatMapMany(acquired -> acquired ? proceedLocked(source, lockInfo, lease)
+                        : retryAcquire(source, lockInfo, lease, interval << 1));
+    }
+
+    /**
+     * 在锁的释放通知上等待，每次最多等待一个时间片，直到总的截止时间
+     */
+    private <T> Flux<T> awaitAcquire(LockHandler<? extends Publisher<T>> source, LockInfo lockInfo,
+                                     ReactiveLease lease, long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return Flux.error(new KlockTimeoutException(String.format(
+                    "Failed to acquire Lock(%s) within %dms, this may because dead lock occurs.",
+                    lockInfo.getLockName(), LockTimeoutStrategy.KEEP_ACQUIRE_NOTIFIED_TIMEOUT)));
+        }
+        getKlockMetrics().recordRetry(lockInfo);
+        long waitNanos = Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(LockTimeoutStrategy.KEEP_ACQUIRE_NOTIFIED_SLICE));
+        return acquire(lockInfo, lease, waitNanos)
+                .flatMapMany(acquired -> acquired ? proceedLocked(source, lockInfo, lease)
+                        : Mono.delay(Duration.ofMillis(LockTimeoutStrategy.nextNotifiedJitter()))
+                        .flatMapMany(tick -> awaitAcquire(source, lockInfo, lease, deadline)));
+    }
+
+    /**
+     * 持有锁订阅source，完成或出错时先释放锁再向下游传递结束信号，取消时异步释放
+     */
+    private <T> Flux<T> proceedLocked(LockHandler<? extends Publisher<T>> source, LockInfo lockInfo,
+                                      ReactiveLease lease) {
+        lease.acquiredAt = System.nanoTime();
+        lease.held = redisLockClient.registerHeld(lockInfo, lease.lock, lease.ownerId);
+        Mono<T> release = Mono.defer(() -> release(lockInfo, lease));
+        return invoke(source)
+                .concatWith(release)
+                .onErrorResume(error -> release.then(Mono.<T>error(error)))
+                .doOnCancel(() -> releaseQuietly(lockInfo, lease));
+    }
+
+    private <T> Flux<T> invoke(LockHandler<? extends Publisher<T>> source) {
+        try {
+            return Flux.from(source.handle());
+        } catch (Throwable e) {
+            return Flux.error(e);
+        }
+    }
+
+    private <T> Mono<T> release(LockInfo lockInfo, ReactiveLease lease) {
+        if (!lease.released.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        redisLockClient.unregisterHeld(lease.held);
+        return Mono.fromFuture(lease.lock.releaseAsync(lease.ownerId).toCompletableFuture())
+                .flatMap(released -> {
+                    redisLockClient.recordHold(lockInfo, System.nanoTime() - lease.acquiredAt);
+                    if (released) {
+                        return Mono.<T>empty();
+                    }
+                    getKlockMetrics().recordReleaseFailure(lockInfo);
+                    try {
+                        redisLockClient.handleReleaseTimeout(lockInfo);
+                        return Mono.<T>empty();
+                    } catch (Throwable e) {
+                        return Mono.<T>error(e);
+                    }
+                });
+    }
+
+    /**
+     * 订阅被取消时释放锁，此时已无法向下游传递释放锁超时的异常
+     */
+    private void releaseQuietly(LockInfo lockInfo, ReactiveLease lease) {
+        if (!lease.released.compareAndSet(false, true)) {
+            return;
+        }
+        redisLockClient.unregisterHeld(lease.held);
+        lease.lock.releaseAsync(lease.ownerId).whenComplete((released, error) -> {
+            redisLockClient.recordHold(lockInfo, System.nanoTime() - lease.acquiredAt);
+            if (error != null || !released) {
+                getKlockMetrics().recordReleaseFailure(lockInfo);
+                log.warn("Lock({}) was already released when the subscription was cancelled", lockInfo.getLockName());
+            }
+        });
+    }
+
+    private KlockMetrics getKlockMetrics() {
+        return redisLockClient.getKlockMetrics();
+    }
+
+    /**
+     * 一次订阅的加锁状态
+     */
+    private static class ReactiveLease {
+
+        private final Lock lock;
+
+        private final long ownerId;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private volatile long acquiredAt;
+
+        private volatile HeldLockRegistry.HeldLock held;
+
+        ReactiveLease(Lock lock, long ownerId) {
+            this.lock = lock;
+            this.ownerId = ownerId;
+        }
+    }
+}
@@ -1,20 +1,28 @@
 package org.springframework.boot.autoconfigure.klock.core;
 
-import com.alibaba.fastjson.JSON;
-import lombok.Getter;
-import lombok.NoArgsConstructor;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.klock.config.KlockConfig;
+import org.springframework.boot.autoconfigure.klock.handler.KlockTimeoutException;
 import org.springframework.boot.autoconfigure.klock.lock.Lock;
 import org.springframework.boot.autoconfigure.klock.lock.LockFactory;
+import org.springframework.boot.autoconfigure.klock.metrics.ContentionProfiler;
+import org.springframework.boot.autoconfigure.klock.metrics.HeldLockRegistry;
+import org.springframework.boot.autoconfigure.klock.metrics.KlockMetrics;
 import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.LockTimeoutStrategy;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
 import org.springframework.util.ObjectUtils;
-import org.springframework.util.StringUtils;
 
-import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Redis分布式锁客户端
@@ -25,90 +33,373 @@ import java.util.concurrent.ConcurrentHashMap;
 @Slf4j
 public class RedisLockClient {
 
+    private static final String CUSTOM_STRATEGY = "CUSTOM";
+
+    private static final AtomicLong OWNER_ID_SEQUENCE = new AtomicLong();
+
     @Autowired
     LockFactory lockFactory;
 
-    private final Map<String, LockRes> currentThreadLock = new ConcurrentHashMap<>();
+    @Autowired
+    private KlockConfig klockConfig;
+
+    @Autowired(required = false)
+    private KlockMetrics klockMetrics = KlockMetrics.NONE;
+
+    @Autowired(required = false)
+    private ContentionProfiler contentionProfiler;
+
+    @Autowired(required = false)
+    private HeldLockRegistry heldLockRegistry;
 
     public <T> T lock(LockHandler<T> handler, LockInfo<T> lockInfo) throws Throwable {
+        return doLock(fencingToken -> handler.handle(), lockInfo);
+    }
+
+    /**
+     * 加锁执行，业务可获得本次加锁的fencing token，用于下游拒绝已失去锁的持有者的写入。
+     * 仅支持可重入锁，未获得锁（NO_OPERATION）时token为0
+     */
+    public <T> T lockFenced(FencedLockHandler<T> handler, LockInfo<T> lockInfo) throws Throwable {
+        return doLock(handler, lockInfo.toFenced());
+    }
 
-        T handle = null;
-        String currentLock = this.getCurrentLockId(lockInfo);
+    /**
+     * 加锁执行，lockInfo开启fencing token时业务可获得本次加锁的token
+     */
+    <T> T doLock(FencedLockHandler<T> handler, LockInfo<T> lockInfo) throws Throwable {
+        return doLock(handler, lockInfo, lockFactory.getLock(lockInfo));
+    }
 
-        log.trace("-currentLock-：" + currentLock);
+    /**
+     * 使用调用方包装过的锁加锁执行
+     */
+    <T> T doLock(FencedLockHandler<T> handler, LockInfo<T> lockInfo, Lock lock) throws Throwable {
 
-        currentThreadLock.put(currentLock, new LockRes(lockInfo, false));
+        //加锁状态保存在当前调用栈中，开启持有锁登记时另在登记表中记录一条，供端点查看
+        boolean acquired = false;
+        long acquiredAt = 0L;
+        HeldLockRegistry.HeldLock held = null;
 
         try {
-            Lock lock = lockFactory.getLock(lockInfo);
-            boolean lockRes = lock.acquire();
+            long start = System.nanoTime();
+            //waitTime为0时只尝试一次，不进入等待和订阅流程
+            acquired = lockInfo.getWaitTime() == 0 ? lock.tryAcquire() : lock.acquire();
+            acquiredAt = System.nanoTime();
+            klockMetrics.recordAcquire(lockInfo, acquiredAt - start, acquired);
+            if (contentionProfiler != null) {
+                contentionProfiler.record(lockInfo, acquiredAt - start, acquired);
+            }
 
             //如果获取锁失败了，则进入失败的处理逻辑
-            if (!lockRes) {
+            if (!acquired) {
                 log.trace("Timeout while acquiring Lock({})", lockInfo.getLockName());
                 //如果自定义了获取锁失败的处理策略，则执行自定义的降级处理策略
-                if (!StringUtils.isEmpty(lockInfo.getCustomLockTimeoutHandler())) {
+                if (lockInfo.getCustomLockTimeoutHandler() != null) {
+                    klockMetrics.recordAcquireFailure(lockInfo, CUSTOM_STRATEGY);
                     return lockInfo.getCustomLockTimeoutHandler().handle();
 
                 } else {
                     //否则执行预定义的执行策略
                     //注意：如果没有指定预定义的策略，默认的策略为静默啥不做处理
-                    lockInfo.getLockTimeoutStrategy().handle(lockInfo, lock);
+                    LockTimeoutStrategy strategy = lockInfo.getLockTimeoutStrategy();
+                    klockMetrics.recordAcquireFailure(lockInfo, strategy.name());
+                    Lock retrying = klockMetrics == KlockMetrics.NONE || !isRetrying(strategy) ? lock
+                            : new RetryRecordingLock(lock, lockInfo, klockMetrics);
+                    if (strategy == LockTimeoutStrategy.KEEP_ACQUIRE_NOTIFIED) {
+                        LockTimeoutStrategy.awaitNotified(lockInfo, retrying, klockConfig.getKeepAcquireNotifiedTimeout());
+                    } else {
+                        strategy.handle(lockInfo, retrying);
+                    }
+                    //除NO_OPERATION外，策略正常返回即表示已经获得锁
+                    acquired = strategy != LockTimeoutStrategy.NO_OPERATION;
+                    acquiredAt = System.nanoTime();
                 }
             }
 
-            //获得锁 设置当前线程锁
-            currentThreadLock.get(currentLock).setLock(lock);
-            //获得锁 设置当前线程结果
-            currentThreadLock.get(currentLock).setRes(true);
-
+            if (acquired) {
+                held = registerHeld(lockInfo, lock, Thread.currentThread().getId());
+            }
             log.trace("handler before");
-            T result = handler.handle();
+            T result = handler.handle(lock.getFencingToken());
             log.trace("handler after");
             return result;
         } finally {
-            log.trace("finally");
-            releaseLock(lockInfo, currentLock);
-            cleanUpThreadLocal(currentLock);
+            unregisterHeld(held);
+            if (acquired) {
+                releaseLock(lockInfo, lock, acquiredAt);
+            }
         }
     }
 
+    /**
+     * 只有会重试加锁的策略才需要记录重试次数，失败路径上不为其他策略创建包装对象
+     */
+    private static boolean isRetrying(LockTimeoutStrategy strategy) {
+        return strategy == LockTimeoutStrategy.KEEP_ACQUIRE || strategy == LockTimeoutStrategy.KEEP_ACQUIRE_NOTIFIED;
+    }
+
     /**
      * 释放锁
      */
-    private void releaseLock(LockInfo lockInfo, String currentLock) throws Throwable {
-        log.trace("releaseLock:" + currentLock + "===>" + lockInfo);
-        LockRes lockRes = currentThreadLock.get(currentLock);
-        log.trace("lockRes:" + JSON.toJSONString(lockRes));
-
-        if (Objects.isNull(lockRes)) {
-            throw new NullPointerException("Please check whether the input parameter used as the lock key value " +
-                    "has been modified in the method, " +
-                    "which will cause the acquire and release locks to have different key values " +
-                    "and throw null pointers.currentLockKey:" + currentLock);
-        }
-
-        if (lockRes.getRes()) {
-            //成功获得锁的线程，需要释放锁
-            boolean releaseRes = currentThreadLock.get(currentLock).getLock().release();
-            // avoid release lock twice when exception happens below
-            lockRes.setRes(false);
-            if (!releaseRes) {
-                log.trace("releaseLock=>releaseRes:" + releaseRes);
-                //释放锁失败
-                handleReleaseTimeout(lockRes.getLockInfo());
+    private void releaseLock(LockInfo lockInfo, Lock lock, long acquiredAt) throws Throwable {
+        //成功获得锁的线程，需要释放锁，持有者校验和释放在一次调用中完成
+        ReleaseResult releaseRes = lock.unlock();
+        recordHold(lockInfo, System.nanoTime() - acquiredAt);
+        if (!releaseRes.isReleased()) {
+            log.trace("releaseLock=>releaseRes:{}", releaseRes);
+            klockMetrics.recordReleaseFailure(lockInfo);
+            //释放锁失败
+            handleReleaseTimeout(lockInfo);
+        }
+    }
+
+    /**
+     * 获取锁并返回持有凭证，持有者是新生成的ownerId而不是当前线程，凭证可交给其他线程释放、续期和查询。
+     * 在锁信息的等待时间内未获得锁时返回null，不执行lockTimeoutStrategy
+     *
+     * @throws IllegalArgumentException 锁不支持按ownerId续期和查询
+     */
+    public LockHandle acquire(LockInfo<?> lockInfo) {
+        try {
+            return acquireAsync(lockInfo).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+        }
+    }
+
+    /**
+     * 异步获取锁并返回持有凭证，未获得锁时结果为null。
+     * 凭证需要按ownerId续期和查询，不支持的锁（Redis读锁、RedLock、多key锁和信号量）直接拒绝
+     *
+     * @throws IllegalArgumentException 锁不支持按ownerId续期和查询
+     */
+    public CompletionStage<LockHandle> acquireAsync(LockInfo<?> lockInfo) {
+        Lock lock = lockFactory.getLock(lockInfo);
+        if (!lock.isRenewable()) {
+            throw new IllegalArgumentException(String.format(
+                    "Lock(%s) of type %s does not support LockHandle, use lock or lockAsync instead",
+                    lockInfo.getLockName(), lockInfo.getType()));
+        }
+        long ownerId = nextOwnerId();
+        long start = System.nanoTime();
+        return lock.acquireAsync(ownerId).thenApply(acquired -> {
+            long waitNanos = System.nanoTime() - start;
+            klockMetrics.recordAcquire(lockInfo, waitNanos, acquired);
+            if (contentionProfiler != null) {
+                contentionProfiler.record(lockInfo, waitNanos, acquired);
             }
+            return acquired ? new LockHandle(this, lockInfo, lock, ownerId) : null;
+        });
+    }
+
+    /**
+     * 异步加锁执行，获取锁、执行业务和释放锁都不会阻塞调用线程。
+     * 锁的持有者是本次调用生成的ownerId而不是当前线程，返回的CompletionStage可在任意线程完成。
+     * 业务、超时处理和释放失败处理在klock的异步线程池中执行，不占用Redis客户端的I/O线程
+     */
+    public <T> CompletableFuture<T> lockAsync(AsyncLockHandler<T> handler, LockInfo<T> lockInfo) {
+        return lockAsync(handler, lockInfo, AsyncExecutor.INSTANCE);
+    }
+
+    /**
+     * 异步加锁执行，业务、超时处理和释放失败处理在给定的executor中执行
+     */
+    public <T> CompletableFuture<T> lockAsync(AsyncLockHandler<T> handler, LockInfo<T> lockInfo, Executor executor) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Lock lock = lockFactory.getLock(lockInfo);
+        long ownerId = nextOwnerId();
+        long start = System.nanoTime();
+
+        lock.acquireAsync(ownerId).whenCompleteAsync((acquired, error) -> {
+            if (error != null) {
+                result.completeExceptionally(unwrap(error));
+                return;
+            }
+            long waitNanos = System.nanoTime() - start;
+            klockMetrics.recordAcquire(lockInfo, waitNanos, acquired);
+            if (contentionProfiler != null) {
+                contentionProfiler.record(lockInfo, waitNanos, acquired);
+            }
+            if (acquired) {
+                proceedAsync(handler, lockInfo, lock, ownerId, true, executor, result);
+            } else {
+                handleLockTimeoutAsync(handler, lockInfo, lock, ownerId, executor, result);
+            }
+        }, executor);
+        return result;
+    }
+
+    /**
+     * 异步获取锁失败的处理，KEEP_ACQUIRE通过定时重试代替线程休眠
+     */
+    private <T> void handleLockTimeoutAsync(AsyncLockHandler<T> handler, LockInfo<T> lockInfo, Lock lock,
+                                            long ownerId, Executor executor, CompletableFuture<T> result) {
+        log.trace("Timeout while acquiring Lock({})", lockInfo.getLockName());
+        try {
+            if (lockInfo.getCustomLockTimeoutHandler() != null) {
+                klockMetrics.recordAcquireFailure(lockInfo, CUSTOM_STRATEGY);
+                result.complete(lockInfo.getCustomLockTimeoutHandler().handle());
+                return;
+            }
+            LockTimeoutStrategy strategy = lockInfo.getLockTimeoutStrategy();
+            klockMetrics.recordAcquireFailure(lockInfo, strategy.name());
+            if (strategy == LockTimeoutStrategy.KEEP_ACQUIRE) {
+                retryAcquireAsync(handler, lockInfo, lock, ownerId, LockTimeoutStrategy.KEEP_ACQUIRE_INTERVAL, executor, result);
+                return;
+            }
+            if (strategy == LockTimeoutStrategy.KEEP_ACQUIRE_NOTIFIED) {
+                long timeout = klockConfig.getKeepAcquireNotifiedTimeout();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+                awaitAcquireAsync(handler, lockInfo, lock, ownerId, timeout, deadline, executor, result);
+                return;
+            }
+            //NO_OPERATION直接返回，FAIL_FAST抛出异常，都不会阻塞
+            strategy.handle(lockInfo, lock);
+            proceedAsync(handler, lockInfo, lock, ownerId, false, executor, result);
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
         }
     }
 
-    // avoid memory leak
-    private void cleanUpThreadLocal(String currentLock) {
-        log.trace("cleanUpThreadLocal=>" + currentLock);
-        currentThreadLock.remove(currentLock);
+    private <T> void retryAcquireAsync(AsyncLockHandler<T> handler, LockInfo<T> lockInfo, Lock lock,
+                                       long ownerId, long interval, Executor executor, CompletableFuture<T> result) {
+        if (interval > LockTimeoutStrategy.KEEP_ACQUIRE_MAX_INTERVAL) {
+            result.completeExceptionally(new KlockTimeoutException(String.format(
+                    "Failed to acquire Lock(%s) after too many times, this may because dead lock occurs.",
+                    lockInfo.getLockName())));
+            return;
+        }
+        RetryScheduler.INSTANCE.schedule(() -> {
+            klockMetrics.recordRetry(lockInfo);
+            lock.acquireAsync(ownerId).whenCompleteAsync((acquired, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(unwrap(error));
+                } else if (acquired) {
+                    proceedAsync(handler, lockInfo, lock, ownerId, true, executor, result);
+                } else {
+                    retryAcquireAsync(handler, lockInfo, lock, ownerId, interval << 1, executor, result);
+                }
+            }, executor);
+        }, interval, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * 获取当前锁在map中的key
+     * 在锁的释放通知上异步等待，每次最多等待一个时间片，失败后加少量随机间隔再次等待，直到总的截止时间
+     */
+    private <T> void awaitAcquireAsync(AsyncLockHandler<T> handler, LockInfo<T> lockInfo, Lock lock, long ownerId,
+                                       long timeout, long deadline, Executor executor, CompletableFuture<T> result) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            result.completeExceptionally(new KlockTimeoutException(String.format(
+                    "Failed to acquire Lock(%s) within %dms, this may because dead lock occurs.",
+                    lockInfo.getLockName(), timeout)));
+            return;
+        }
+        klockMetrics.recordRetry(lockInfo);
+        long waitNanos = Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(LockTimeoutStrategy.KEEP_ACQUIRE_NOTIFIED_SLICE));
+        lock.acquireAsync(ownerId, waitNanos, TimeUnit.NANOSECONDS).whenCompleteAsync((acquired, error) -> {
+            if (error != null) {
+                result.completeExceptionally(unwrap(error));
+            } else if (acquired) {
+                proceedAsync(handler, lockInfo, lock, ownerId, true, executor, result);
+            } else {
+                RetryScheduler.INSTANCE.schedule(
+                        () -> awaitAcquireAsync(handler, lockInfo, lock, ownerId, timeout, deadline, executor, result),
+                        LockTimeoutStrategy.nextNotifiedJitter(), TimeUnit.MILLISECONDS);
+            }
+        }, executor);
+    }
+
+    /**
+     * 执行异步业务，业务完成后异步释放锁。调用方已在executor中，释放的结果同样交回executor处理
+     */
+    private <T> void proceedAsync(AsyncLockHandler<T> handler, LockInfo<T> lockInfo, Lock lock,
+                                  long ownerId, boolean locked, Executor executor, CompletableFuture<T> result) {
+        long acquiredAt = System.nanoTime();
+        HeldLockRegistry.HeldLock held = locked ? registerHeld(lockInfo, lock, ownerId) : null;
+        CompletionStage<T> stage;
+        try {
+            stage = handler.handle();
+        } catch (Throwable e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            stage = failed;
+        }
+
+        stage.whenComplete((value, error) -> {
+            if (!locked) {
+                complete(result, value, error);
+                return;
+            }
+            unregisterHeld(held);
+            lock.releaseAsync(ownerId).whenCompleteAsync((released, releaseError) -> {
+                recordHold(lockInfo, System.nanoTime() - acquiredAt);
+                if (releaseError == null && released) {
+                    complete(result, value, error);
+                    return;
+                }
+                klockMetrics.recordReleaseFailure(lockInfo);
+                try {
+                    //与同步加锁一致，释放锁超时的处理异常会覆盖业务结果
+                    handleReleaseTimeout(lockInfo);
+                    complete(result, value, error);
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            }, executor);
+        });
+    }
+
+    private static <T> void complete(CompletableFuture<T> result, T value, Throwable error) {
+        if (error != null) {
+            result.completeExceptionally(unwrap(error));
+        } else {
+            result.complete(value);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * 生成异步持有者标识，取负数避免与线程id冲突
+     */
+    static long nextOwnerId() {
+        return -OWNER_ID_SEQUENCE.incrementAndGet();
+    }
+
+    /**
+     * 未开启持有锁登记时返回null
+     */
+    HeldLockRegistry.HeldLock registerHeld(LockInfo lockInfo, Lock lock, long ownerId) {
+        return heldLockRegistry != null ? heldLockRegistry.register(lockInfo, lock, ownerId) : null;
+    }
+
+    void unregisterHeld(HeldLockRegistry.HeldLock held) {
+        if (held != null) {
+            heldLockRegistry.unregister(held);
+        }
+    }
+
+    /**
+     * 记录持锁时间，开启自适应租期时同时计入该方法的直方图
+     */
+    void recordHold(LockInfo<?> lockInfo, long nanos) {
+        klockMetrics.recordHold(lockInfo, nanos);
+        if (lockInfo.getLeaseEstimator() != null) {
+            lockInfo.getLeaseEstimator().record(nanos);
+        }
+    }
+
+    KlockMetrics getKlockMetrics() {
+        return klockMetrics;
+    }
+
+    /**
+     * 获取当前线程持有该锁的标识
      *
      * @param lockInfo
      * @return
@@ -120,7 +411,7 @@ public class RedisLockClient {
     /**
      * 处理释放锁时已超时
      */
-    private void handleReleaseTimeout(LockInfo lockInfo) throws Throwable {
+    void handleReleaseTimeout(LockInfo lockInfo) throws Throwable {
 
         log.trace("Timeout while release Lock({})", lockInfo.getLockName());
 
@@ -142,19 +433,69 @@ public class RedisLockClient {
         releaseTimeoutHandler.handle();
     }
 
+    /**
+     * 异步KEEP_ACQUIRE重试的调度线程，只负责触发下一次异步获取，按需创建
+     */
+    private static class RetryScheduler {
+
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "klock-retry-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 未指定executor时异步业务和回调使用的线程池，线程按需创建，空闲后回收
+     */
+    private static class AsyncExecutor {
+
+        private static final AtomicLong THREAD_SEQUENCE = new AtomicLong();
+
+        static final ExecutorService INSTANCE = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "klock-async-" + THREAD_SEQUENCE.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 超时策略重试获取锁时，记录重试次数
+     */
+    private static class RetryRecordingLock implements Lock {
 
-    @Getter
-    @Setter
-    @NoArgsConstructor
-    private class LockRes {
+        private final Lock delegate;
 
-        private LockInfo lockInfo;
-        private Lock lock;
-        private Boolean res;
+        private final LockInfo lockInfo;
 
-        LockRes(LockInfo lockInfo, Boolean res) {
+        private final KlockMetrics klockMetrics;
+
+        RetryRecordingLock(Lock delegate, LockInfo lockInfo, KlockMetrics klockMetrics) {
+            this.delegate = delegate;
             this.lockInfo = lockInfo;
-            this.res = res;
+            this.klockMetrics = klockMetrics;
+        }
+
+        @Override
+        public boolean acquire() {
+            klockMetrics.recordRetry(lockInfo);
+            return delegate.acquire();
+        }
+
+        @Override
+        public boolean acquire(long waitTime, TimeUnit unit) {
+            klockMetrics.recordRetry(lockInfo);
+            return delegate.acquire(waitTime, unit);
+        }
+
+        @Override
+        public ReleaseResult unlock() {
+            return delegate.unlock();
+        }
+
+        @Override
+        public long getFencingToken() {
+            return delegate.getFencingToken();
         }
     }
 }
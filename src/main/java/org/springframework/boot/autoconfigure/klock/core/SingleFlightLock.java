@@ -0,0 +1,193 @@
+package org.springframework.boot.autoconfigure.klock.core;
+
+import org.springframework.boot.autoconfigure.klock.lock.Lock;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+import org.springframework.boot.autoconfigure.klock.model.SingleFlightResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * single-flight等待者使用的锁：先不等待地尝试一次，失败后在等待锁的同时关注持锁者发布的结果，
+ * 结果先于锁到达时不再获取锁，加锁直接视为成功，由处理方法返回该结果，释放时也不再访问Redis。
+ * 只在调用线程中使用，持有者是当前线程
+ *
+ * @author kl
+ */
+final class SingleFlightLock implements Lock {
+
+    private final Lock delegate;
+
+    private final SingleFlightResults results;
+
+    private final LockInfo lockInfo;
+
+    private final long arrival;
+
+    private final long ownerId = Thread.currentThread().getId();
+
+    private SingleFlightResults.Watch watch;
+
+    private boolean held;
+
+    /**
+     * 通过acquireAsync获得的锁需要用unlockAsync释放
+     */
+    private boolean heldAsync;
+
+    SingleFlightLock(Lock delegate, SingleFlightResults results, LockInfo lockInfo, long arrival) {
+        this.delegate = delegate;
+        this.results = results;
+        this.lockInfo = lockInfo;
+        this.arrival = arrival;
+    }
+
+    @Override
+    public boolean acquire() {
+        return acquire(lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean acquire(long waitTime, TimeUnit unit) {
+        if (getSharedResult() != null) {
+            return true;
+        }
+        //没有竞争时不订阅结果通知
+        if (watch == null && tryAcquire()) {
+            return true;
+        }
+        if (watch == null) {
+            watch = results.watch(lockInfo.getLockName(), arrival);
+        }
+        CompletableFuture<SingleFlightResult> published = watch.getPublished();
+        if (published.isDone()) {
+            return true;
+        }
+
+        CompletableFuture<Boolean> acquiring = delegate.acquireAsync(ownerId, waitTime, unit).toCompletableFuture();
+        try {
+            CompletableFuture.anyOf(acquiring, published).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            releaseWhenAcquired(acquiring);
+            return false;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UnsupportedOperationException) {
+                //不支持异步获取的锁只能同步等待，拿到锁后再读取结果
+                held = delegate.acquire(waitTime, unit);
+                return held;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+
+        if (!acquiring.isCompletedExceptionally() && acquiring.getNow(false)) {
+            held = true;
+            heldAsync = true;
+            return true;
+        }
+        if (published.isDone()) {
+            releaseWhenAcquired(acquiring);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        if (getSharedResult() != null) {
+            return true;
+        }
+        held = delegate.tryAcquire();
+        return held;
+    }
+
+    /**
+     * 直接返回共享结果的等待者没有持有锁，释放总是成功
+     */
+    @Override
+    public ReleaseResult unlock() {
+        if (!held) {
+            return ReleaseResult.RELEASED;
+        }
+        held = false;
+        if (!heldAsync) {
+            return delegate.unlock();
+        }
+        heldAsync = false;
+        try {
+            return delegate.unlockAsync(ownerId).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+        }
+    }
+
+    @Override
+    public long getFencingToken() {
+        return held ? delegate.getFencingToken() : 0L;
+    }
+
+    @Override
+    public boolean isLocallyHeld() {
+        return delegate.isLocallyHeld();
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId) {
+        return delegate.acquireAsync(ownerId);
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId, long waitTime, TimeUnit unit) {
+        return delegate.acquireAsync(ownerId, waitTime, unit);
+    }
+
+    @Override
+    public CompletionStage<ReleaseResult> unlockAsync(long ownerId) {
+        return delegate.unlockAsync(ownerId);
+    }
+
+    @Override
+    public boolean isRenewable() {
+        return delegate.isRenewable();
+    }
+
+    @Override
+    public CompletionStage<Boolean> renewAsync(long ownerId) {
+        return delegate.renewAsync(ownerId);
+    }
+
+    @Override
+    public CompletionStage<Boolean> isHeldAsync(long ownerId) {
+        return delegate.isHeldAsync(ownerId);
+    }
+
+    /**
+     * 等待期间收到的可共享结果，没有时返回null
+     */
+    SingleFlightResult getSharedResult() {
+        return watch != null && watch.getPublished().isDone() ? watch.getPublished().join() : null;
+    }
+
+    void close() {
+        if (watch != null) {
+            watch.close();
+        }
+    }
+
+    /**
+     * 已经不需要的获取仍可能成功，成功后立即释放
+     */
+    private void releaseWhenAcquired(CompletableFuture<Boolean> acquiring) {
+        acquiring.thenAccept(acquired -> {
+            if (acquired) {
+                delegate.unlockAsync(ownerId);
+            }
+        });
+    }
+}
@@ -0,0 +1,210 @@
+package org.springframework.boot.autoconfigure.klock.core;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBucket;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.klock.config.KlockConfig;
+import org.springframework.boot.autoconfigure.klock.lock.LockFactory;
+import org.springframework.boot.autoconfigure.klock.lock.LockKeys;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.SingleFlightResult;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * single-flight模式：持锁者执行方法后把返回值按配置的codec写入Redis并设置较短的过期时间，
+ * 并在 klock_result_channel:{锁名称} 上通知等待者。同一锁名称上等待的调用方一边等待锁一边关注通知，
+ * 结果先到达时直接返回，不再获取锁，也不再重复执行方法。
+ * 只共享在调用方到达之后发布的结果；未使用Redisson时结果只在本节点内共享
+ *
+ * @author kl
+ */
+@Slf4j
+public class SingleFlightResults {
+
+    /**
+     * 结果key的前缀，hashtag规则与锁相同（见LockKeys），集群模式下与锁位于同一slot
+     */
+    private static final String RESULT_KEY_PREFIX = "klock_result:";
+
+    private static final String RESULT_CHANNEL_PREFIX = "klock_result_channel:";
+
+    private static final SingleFlightResult NO_RESULT = new SingleFlightResult();
+
+    @Autowired
+    private KlockConfig klockConfig;
+
+    @Autowired(required = false)
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private LockFactory lockFactory;
+
+    @Autowired
+    private RedisLockClient redisLockClient;
+
+    private Cache<String, SingleFlightResult> localResults;
+
+    /**
+     * 未使用Redisson时本节点内各锁名称上关注结果的等待者
+     */
+    private final Map<String, Set<CompletableFuture<SingleFlightResult>>> localWatches = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (redissonClient == null) {
+            localResults = Caffeine.newBuilder()
+                    .expireAfterWrite(klockConfig.getSingleFlight().getResultTtl(), TimeUnit.MILLISECONDS)
+                    .build();
+        }
+    }
+
+    /**
+     * single-flight方式加锁执行，等待者在等待期间收到可共享的结果时直接返回，不获取锁
+     */
+    Object lock(LockInfo<Object> lockInfo, LockHandler<Object> handler) throws Throwable {
+        String lockName = lockInfo.getLockName();
+        long arrival = System.currentTimeMillis();
+        SingleFlightLock lock = new SingleFlightLock(lockFactory.getLock(lockInfo), this, lockInfo, arrival);
+        try {
+            return redisLockClient.doLock(fencingToken -> {
+                SingleFlightResult shared = lock.getSharedResult();
+                return shared != null ? shared.getValue() : proceed(lockName, arrival, handler);
+            }, lockInfo, lock);
+        } finally {
+            lock.close();
+        }
+    }
+
+    /**
+     * 开始关注锁名称上在arrival之后发布的结果，使用完毕后必须调用{@link Watch#close()}。
+     * 订阅失败时返回的关注不会完成，等待者退回到等待锁
+     */
+    Watch watch(String lockName, long arrival) {
+        CompletableFuture<SingleFlightResult> published = new CompletableFuture<>();
+        Runnable cancel;
+        if (localResults != null) {
+            localWatches.compute(lockName, (key, watches) -> {
+                Set<CompletableFuture<SingleFlightResult>> current = watches != null ? watches
+                        : ConcurrentHashMap.newKeySet();
+                current.add(published);
+                return current;
+            });
+            cancel = () -> localWatches.computeIfPresent(lockName, (key, watches) -> {
+                watches.remove(published);
+                return watches.isEmpty() ? null : watches;
+            });
+        } else {
+            RTopic topic = topic(lockName);
+            int listenerId;
+            try {
+                listenerId = topic.addListener(String.class, (channel, publishedAt) -> {
+                    if (Long.parseLong(publishedAt) >= arrival) {
+                        bucket(lockName).getAsync().thenAccept(result -> offer(published, result, arrival));
+                    }
+                });
+            } catch (Exception e) {
+                log.warn("Fail to watch single-flight result of {}, wait for the lock instead", lockName, e);
+                return new Watch(published, () -> { });
+            }
+            cancel = () -> topic.removeListenerAsync(listenerId);
+        }
+        //开始关注之前已经发布的结果不会再有通知
+        offer(published, find(lockName), arrival);
+        return new Watch(published, cancel);
+    }
+
+    private static void offer(CompletableFuture<SingleFlightResult> published, SingleFlightResult result, long arrival) {
+        if (result != null && result != NO_RESULT && result.getPublishedAt() >= arrival) {
+            published.complete(result);
+        }
+    }
+
+    /**
+     * 已持有锁时调用，有可共享的结果则直接返回，否则执行方法并发布结果，方法抛出的异常不共享
+     *
+     * @param lockName 锁名称
+     * @param arrival  调用方开始等待锁的毫秒时间戳
+     */
+    Object proceed(String lockName, long arrival, LockHandler<Object> handler) throws Throwable {
+        SingleFlightResult shared = find(lockName);
+        if (shared != NO_RESULT && shared.getPublishedAt() >= arrival) {
+            return shared.getValue();
+        }
+        Object result = handler.handle();
+        publish(lockName, new SingleFlightResult(System.currentTimeMillis(), result));
+        return result;
+    }
+
+    private SingleFlightResult find(String lockName) {
+        try {
+            SingleFlightResult result = localResults != null ? localResults.getIfPresent(lockName)
+                    : bucket(lockName).get();
+            return result != null ? result : NO_RESULT;
+        } catch (Exception e) {
+            log.warn("Fail to read single-flight result of {}, execute the method instead", lockName, e);
+            return NO_RESULT;
+        }
+    }
+
+    /**
+     * 发布失败（如返回值无法序列化）只影响等待者是否复用结果，不影响本次调用
+     */
+    private void publish(String lockName, SingleFlightResult result) {
+        try {
+            if (localResults != null) {
+                localResults.put(lockName, result);
+                Set<CompletableFuture<SingleFlightResult>> watches = localWatches.get(lockName);
+                if (watches != null) {
+                    watches.forEach(watch -> watch.complete(result));
+                }
+            } else {
+                bucket(lockName).set(result, klockConfig.getSingleFlight().getResultTtl(), TimeUnit.MILLISECONDS);
+                topic(lockName).publishAsync(String.valueOf(result.getPublishedAt()));
+            }
+        } catch (Exception e) {
+            log.warn("Fail to publish single-flight result of {}", lockName, e);
+        }
+    }
+
+    private RBucket<SingleFlightResult> bucket(String lockName) {
+        return redissonClient.getBucket(LockKeys.prefixName(RESULT_KEY_PREFIX, lockName));
+    }
+
+    private RTopic topic(String lockName) {
+        return redissonClient.getTopic(LockKeys.prefixName(RESULT_CHANNEL_PREFIX, lockName), StringCodec.INSTANCE);
+    }
+
+    /**
+     * 一个等待者对新结果的关注
+     */
+    static final class Watch {
+
+        private final CompletableFuture<SingleFlightResult> published;
+
+        private final Runnable cancel;
+
+        Watch(CompletableFuture<SingleFlightResult> published, Runnable cancel) {
+            this.published = published;
+            this.cancel = cancel;
+        }
+
+        CompletableFuture<SingleFlightResult> getPublished() {
+            return published;
+        }
+
+        void close() {
+            cancel.run();
+        }
+    }
+}
@@ -6,14 +6,42 @@ package org.springframework.boot.autoconfigure.klock.handler;
  **/
 public class KlockTimeoutException extends RuntimeException {
 
+    /**
+     * 不等待加锁失败时的锁名称，消息在读取时才拼接
+     */
+    private final String lockName;
+
     public KlockTimeoutException() {
+        this.lockName = null;
+    }
+
+    private KlockTimeoutException(String lockName, boolean writableStackTrace) {
+        super(null, null, false, writableStackTrace);
+        this.lockName = lockName;
+    }
+
+    /**
+     * waitTime为0时加锁失败是预期内的结果，异常不填充堆栈，也不预先拼接消息
+     */
+    public static KlockTimeoutException nonWaiting(String lockName) {
+        return new KlockTimeoutException(lockName, false);
     }
 
     public KlockTimeoutException(String message) {
         super(message);
+        this.lockName = null;
     }
 
     public KlockTimeoutException(String message, Throwable cause) {
         super(message, cause);
+        this.lockName = null;
+    }
+
+    @Override
+    public String getMessage() {
+        if (lockName == null) {
+            return super.getMessage();
+        }
+        return "Failed to acquire Lock(" + lockName + ") without waiting";
     }
 }
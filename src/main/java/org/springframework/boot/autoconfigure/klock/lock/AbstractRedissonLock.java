@@ -0,0 +1,201 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import org.redisson.api.RLock;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Redisson RLock的锁，子类只需提供对应类型的RLock
+ *
+ * @author kl
+ */
+public abstract class AbstractRedissonLock implements Lock {
+
+    protected final LockInfo lockInfo;
+
+    private RLock rLock;
+
+    private LeaseRenewalScheduler renewalScheduler;
+
+    private LeaseRenewalScheduler.Lease lease;
+
+    protected AbstractRedissonLock(LockInfo lockInfo) {
+        this.lockInfo = lockInfo;
+    }
+
+    /**
+     * 创建锁对应的Redisson锁对象
+     */
+    protected abstract RLock createRLock();
+
+    protected RLock getRLock() {
+        if (rLock == null) {
+            rLock = createRLock();
+        }
+        return rLock;
+    }
+
+    /**
+     * 使用缓存的RLock，RLock不保存持有者状态，但保存最近一次加锁的租期，只能在租期相同的调用间共享
+     */
+    void bindRLock(RLock rLock) {
+        this.rLock = rLock;
+    }
+
+    /**
+     * 未指定租期时由统一的续期调度续期，不再使用Redisson每个锁一个的看门狗
+     */
+    void bindRenewalScheduler(LeaseRenewalScheduler renewalScheduler) {
+        this.renewalScheduler = renewalScheduler;
+    }
+
+    /**
+     * 锁hash中持有者字段相对于Redisson可重入锁的后缀，返回null表示该类型的锁仍使用Redisson看门狗
+     */
+    protected String getLeaseFieldSuffix() {
+        return "";
+    }
+
+    @Override
+    public boolean acquire() {
+        return acquire(lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean acquire(long waitTime, TimeUnit unit) {
+        boolean scheduledRenewal = isScheduledRenewal();
+        long leaseTime = scheduledRenewal ? renewalScheduler.getLeaseTime() : getLeaseTimeMillis();
+        boolean acquired;
+        try {
+            acquired = tryAcquire(unit.toMillis(waitTime), leaseTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (acquired && scheduledRenewal) {
+            registerLease(Thread.currentThread().getId());
+        }
+        return acquired;
+    }
+
+    /**
+     * 在等待时间内尝试加锁，租期为-1时由Redisson看门狗续期
+     */
+    protected boolean tryAcquire(long waitMillis, long leaseMillis) throws InterruptedException {
+        return getRLock().tryLock(waitMillis, leaseMillis, TimeUnit.MILLISECONDS);
+    }
+
+    protected CompletionStage<Boolean> tryAcquireAsync(long ownerId, long waitMillis, long leaseMillis) {
+        return getRLock().tryLockAsync(waitMillis, leaseMillis, TimeUnit.MILLISECONDS, ownerId);
+    }
+
+    private boolean isScheduledRenewal() {
+        return lockInfo.getLeaseTime() < 0 && renewalScheduler != null && getLeaseFieldSuffix() != null;
+    }
+
+    /**
+     * 持有者记录在锁的hash字段中时才能按字段续期和查询，读锁的租期另存在单独的key中，不支持
+     */
+    @Override
+    public boolean isRenewable() {
+        return renewalScheduler != null && getLeaseFieldSuffix() != null;
+    }
+
+    @Override
+    public CompletionStage<Boolean> renewAsync(long ownerId) {
+        if (!isRenewable()) {
+            return Lock.unsupported("renewAsync");
+        }
+        long leaseMillis = lockInfo.getLeaseTime() < 0 ? renewalScheduler.getLeaseTime() : getLeaseTimeMillis();
+        return renewalScheduler.renewAsync(lockInfo.getLockName(), getLeaseField(ownerId), leaseMillis);
+    }
+
+    @Override
+    public CompletionStage<Boolean> isHeldAsync(long ownerId) {
+        if (!isRenewable()) {
+            return Lock.unsupported("isHeldAsync");
+        }
+        return renewalScheduler.isHeldAsync(lockInfo.getLockName(), getLeaseField(ownerId));
+    }
+
+    private String getLeaseField(long ownerId) {
+        return renewalScheduler.getOwnerField(ownerId) + getLeaseFieldSuffix();
+    }
+
+    private void registerLease(long ownerId) {
+        lease = renewalScheduler.register(lockInfo.getLockName(), getLeaseField(ownerId));
+    }
+
+    private void unregisterLease() {
+        if (lease != null) {
+            renewalScheduler.unregister(lease);
+            lease = null;
+        }
+    }
+
+    /**
+     * 租期换算为毫秒，-1表示由看门狗自动续期
+     */
+    protected long getLeaseTimeMillis() {
+        long leaseTime = lockInfo.getLeaseTime();
+        return leaseTime < 0 ? leaseTime : TimeUnit.SECONDS.toMillis(leaseTime);
+    }
+
+    /**
+     * unlock脚本本身会校验持有者并只减少一次重入计数，成功时只有一次往返；
+     * 只有失败时才再查询一次锁是否还存在，以区分锁被他人持有还是已过期
+     */
+    @Override
+    public ReleaseResult unlock() {
+        unregisterLease();
+        RLock lock = getRLock();
+        try {
+            lock.unlock();
+            return ReleaseResult.RELEASED;
+        } catch (IllegalMonitorStateException e) {
+            return lock.isLocked() ? ReleaseResult.NOT_OWNER : ReleaseResult.LEASE_EXPIRED;
+        }
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId) {
+        return acquireAsync(ownerId, lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId, long waitTime, TimeUnit unit) {
+        if (!isScheduledRenewal()) {
+            return tryAcquireAsync(ownerId, unit.toMillis(waitTime), getLeaseTimeMillis());
+        }
+        return tryAcquireAsync(ownerId, unit.toMillis(waitTime), renewalScheduler.getLeaseTime())
+                .thenApply(acquired -> {
+                    if (acquired) {
+                        registerLease(ownerId);
+                    }
+                    return acquired;
+                });
+    }
+
+    @Override
+    public CompletionStage<ReleaseResult> unlockAsync(long ownerId) {
+        unregisterLease();
+        RLock lock = getRLock();
+        return lock.unlockAsync(ownerId).handle((result, error) -> error).thenCompose(error -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(ReleaseResult.RELEASED);
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (!(cause instanceof IllegalMonitorStateException)) {
+                CompletableFuture<ReleaseResult> failed = new CompletableFuture<>();
+                failed.completeExceptionally(cause);
+                return failed;
+            }
+            return lock.isLockedAsync().thenApply(locked -> locked ? ReleaseResult.NOT_OWNER : ReleaseResult.LEASE_EXPIRED);
+        });
+    }
+}
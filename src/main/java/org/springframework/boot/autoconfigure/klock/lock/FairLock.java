@@ -4,47 +4,20 @@ import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.boot.autoconfigure.klock.model.LockInfo;
 
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-
 /**
  * Created by kl on 2017/12/29.
  */
-public class FairLock implements Lock {
-
-    private  RLock rLock;
-    
-    private final LockInfo lockInfo;
+public class FairLock extends AbstractRedissonLock {
 
-    private RedissonClient redissonClient;
+    private final RedissonClient redissonClient;
 
-    public FairLock(RedissonClient redissonClient,LockInfo info) {
+    public FairLock(RedissonClient redissonClient,LockInfo lockInfo) {
+        super(lockInfo);
         this.redissonClient = redissonClient;
-        this.lockInfo = info;
-    }
-
-    @Override
-    public boolean acquire() {
-        try {
-            rLock=redissonClient.getFairLock(lockInfo.getLockName());
-            return rLock.tryLock(lockInfo.getWaitTime(), lockInfo.getLeaseTime(), TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            return false;
-        }
     }
 
     @Override
-    public boolean release() {
-        if(rLock.isHeldByCurrentThread()){
-
-            try {
-                return rLock.forceUnlockAsync().get();
-            } catch (InterruptedException e) {
-                return false;
-            } catch (ExecutionException e) {
-                return false;
-            }
-        }
-        return false;
+    protected RLock createRLock() {
+        return redissonClient.getFairLock(lockInfo.getLockName());
     }
 }
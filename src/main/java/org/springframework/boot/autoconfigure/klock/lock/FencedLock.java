@@ -0,0 +1,211 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 带fencing token的可重入锁：加锁与递增该锁名称的token计数器在同一个脚本中完成，
+ * 每次加锁得到一个单调递增的token，下游存储可据此拒绝已失去锁的持有者的写入。
+ * 锁的hash结构与Redisson可重入锁一致，释放和续期沿用可重入锁的逻辑，
+ * 等待者在同一个释放通知频道上等待，锁释放后立即重试
+ *
+ * @author kl
+ */
+public class FencedLock extends ReentrantLock {
+
+    /**
+     * 加锁成功返回{1, token}，否则返回{0, 锁的剩余过期时间}
+     */
+    private static final String ACQUIRE_SCRIPT =
+            "if (redis.call('exists', KEYS[1]) == 0) or (redis.call('hexists', KEYS[1], ARGV[2]) == 1) then " +
+                "redis.call('hincrby', KEYS[1], ARGV[2], 1); " +
+                "redis.call('pexpire', KEYS[1], ARGV[1]); " +
+                "return {1, redis.call('incr', KEYS[2])}; " +
+            "end; " +
+            "return {0, redis.call('pttl', KEYS[1])};";
+
+    /**
+     * token计数器key的前缀，锁名称作为hashtag，集群模式下与锁位于同一slot
+     */
+    private static final String FENCING_KEY_PREFIX = "klock_fencing:";
+
+    private final RedissonClient redissonClient;
+
+    private final LockReleaseNotifications notifications;
+
+    private final List<Object> keys;
+
+    private volatile long fencingToken;
+
+    FencedLock(RedissonClient redissonClient, LockReleaseNotifications notifications, LockInfo lockInfo) {
+        super(redissonClient, lockInfo);
+        this.redissonClient = redissonClient;
+        this.notifications = notifications;
+        this.keys = Arrays.asList(lockInfo.getLockName(), LockKeys.prefixName(FENCING_KEY_PREFIX, lockInfo.getLockName()));
+    }
+
+    @Override
+    public long getFencingToken() {
+        return fencingToken;
+    }
+
+    /**
+     * 首次尝试失败后订阅锁的释放通知，之后每次尝试失败都在通知上等待，最多等待锁的剩余过期时间
+     */
+    @Override
+    protected boolean tryAcquire(long waitMillis, long leaseMillis) throws InterruptedException {
+        String owner = getOwner(Thread.currentThread().getId());
+        long leaseTime = toLeaseTime(leaseMillis);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        if (isAcquired(eval(owner, leaseTime))) {
+            return true;
+        }
+        if (waitMillis <= 0) {
+            return false;
+        }
+        LockReleaseNotifications.Subscription subscription = notifications.subscribe(lockInfo.getLockName());
+        try {
+            if (!await(subscription.whenSubscribed(), remainingMillis(deadline))) {
+                return false;
+            }
+            while (true) {
+                CompletableFuture<Void> released = subscription.nextRelease();
+                List<Number> result = eval(owner, leaseTime);
+                if (isAcquired(result)) {
+                    return true;
+                }
+                long remaining = remainingMillis(deadline);
+                if (remaining <= 0) {
+                    return false;
+                }
+                await(released, nextWait(result.get(1).longValue(), remaining));
+            }
+        } finally {
+            notifications.unsubscribe(subscription);
+        }
+    }
+
+    @Override
+    protected CompletionStage<Boolean> tryAcquireAsync(long ownerId, long waitMillis, long leaseMillis) {
+        String owner = getOwner(ownerId);
+        long leaseTime = toLeaseTime(leaseMillis);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        return evalAsync(owner, leaseTime).thenCompose(result -> {
+            if (isAcquired(result)) {
+                return CompletableFuture.completedFuture(true);
+            }
+            if (remainingMillis(deadline) <= 0) {
+                return CompletableFuture.completedFuture(false);
+            }
+            LockReleaseNotifications.Subscription subscription = notifications.subscribe(lockInfo.getLockName());
+            CompletableFuture<Boolean> acquired = new CompletableFuture<>();
+            acquired.whenComplete((success, error) -> notifications.unsubscribe(subscription));
+            subscription.whenSubscribed().whenComplete((ignored, error) -> {
+                if (error != null) {
+                    acquired.completeExceptionally(error);
+                } else {
+                    retryAsync(subscription, owner, deadline, leaseTime, acquired);
+                }
+            });
+            return acquired;
+        });
+    }
+
+    private void retryAsync(LockReleaseNotifications.Subscription subscription, String owner, long deadline,
+                            long leaseTime, CompletableFuture<Boolean> acquired) {
+        CompletableFuture<Void> released = subscription.nextRelease();
+        evalAsync(owner, leaseTime).whenComplete((result, error) -> {
+            if (error != null) {
+                acquired.completeExceptionally(error);
+                return;
+            }
+            if (isAcquired(result)) {
+                acquired.complete(true);
+                return;
+            }
+            long remaining = remainingMillis(deadline);
+            if (remaining <= 0) {
+                acquired.complete(false);
+                return;
+            }
+            CompletableFuture<Void> wakeUp = new CompletableFuture<>();
+            ScheduledFuture<?> timer = LockScheduler.INSTANCE.schedule(() -> wakeUp.complete(null),
+                    nextWait(result.get(1).longValue(), remaining), TimeUnit.MILLISECONDS);
+            released.thenRun(() -> wakeUp.complete(null));
+            wakeUp.thenRun(() -> {
+                timer.cancel(false);
+                retryAsync(subscription, owner, deadline, leaseTime, acquired);
+            });
+        });
+    }
+
+    private List<Number> eval(String owner, long leaseTime) {
+        return script().eval(RScript.Mode.READ_WRITE, ACQUIRE_SCRIPT, RScript.ReturnType.MULTI,
+                keys, leaseTime, owner);
+    }
+
+    private CompletableFuture<List<Number>> evalAsync(String owner, long leaseTime) {
+        return script().<List<Number>>evalAsync(RScript.Mode.READ_WRITE, ACQUIRE_SCRIPT, RScript.ReturnType.MULTI,
+                keys, leaseTime, owner).toCompletableFuture();
+    }
+
+    private boolean isAcquired(List<Number> result) {
+        if (result.get(0).intValue() != 1) {
+            return false;
+        }
+        fencingToken = result.get(1).longValue();
+        return true;
+    }
+
+    private RScript script() {
+        return redissonClient.getScript(StringCodec.INSTANCE);
+    }
+
+    private String getOwner(long threadId) {
+        return redissonClient.getId() + ":" + threadId;
+    }
+
+    /**
+     * 脚本加锁必须带过期时间，未登记到续期调度时按看门狗超时时间加锁
+     */
+    private long toLeaseTime(long leaseMillis) {
+        return leaseMillis < 0 ? redissonClient.getConfig().getLockWatchdogTimeout() : leaseMillis;
+    }
+
+    /**
+     * 等待释放通知，超时返回false
+     */
+    private boolean await(CompletableFuture<?> future, long waitMillis) throws InterruptedException {
+        try {
+            future.get(waitMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Fail to subscribe release notifications of Lock("
+                    + lockInfo.getLockName() + ")", e.getCause());
+        }
+    }
+
+    private static long remainingMillis(long deadline) {
+        return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    }
+
+    /**
+     * 释放通知可能丢失，最多等到锁过期
+     */
+    private static long nextWait(long ttl, long remaining) {
+        return Math.max(1L, ttl > 0 ? Math.min(ttl, remaining) : remaining);
+    }
+}
@@ -0,0 +1,269 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RPermitExpirableSemaphore;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.boot.autoconfigure.klock.metrics.KlockMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 统一的租期续期调度：未指定租期的锁不再各自启动看门狗定时器，
+ * 而是登记到这里，每个周期把所有登记的租期用一个pipeline批量续期。
+ * 信号量的许可同样登记到这里，在同一个周期中一并发出续期命令。
+ * 续期周期为看门狗超时时间的1/3，与Redisson看门狗一致
+ *
+ * @author kl
+ */
+@Slf4j
+public class LeaseRenewalScheduler {
+
+    /**
+     * 持有者字段存在时延长过期时间，返回1续期成功，0锁已不再持有
+     */
+    private static final String RENEW_SCRIPT =
+            "if redis.call('hexists', KEYS[1], ARGV[2]) == 1 then " +
+                "redis.call('pexpire', KEYS[1], ARGV[1]); " +
+                "return 1; " +
+            "end; " +
+            "return 0;";
+
+    /**
+     * 单个pipeline中最多的续期命令数
+     */
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private final RedissonClient redissonClient;
+
+    private final KlockMetrics klockMetrics;
+
+    private final long leaseTime;
+
+    /**
+     * 登记的租期及其重入次数
+     */
+    private final Map<Lease, Integer> leases = new ConcurrentHashMap<>();
+
+    /**
+     * 登记的信号量许可，许可id唯一，不存在重入
+     */
+    private final Set<Permit> permits = ConcurrentHashMap.newKeySet();
+
+    private volatile ScheduledFuture<?> task;
+
+    private long nextTick;
+
+    public LeaseRenewalScheduler(RedissonClient redissonClient, KlockMetrics klockMetrics) {
+        this.redissonClient = redissonClient;
+        this.klockMetrics = klockMetrics;
+        this.leaseTime = redissonClient.getConfig().getLockWatchdogTimeout();
+    }
+
+    /**
+     * 登记到调度的锁加锁时使用的租期，单位：毫秒
+     */
+    public long getLeaseTime() {
+        return leaseTime;
+    }
+
+    /**
+     * 登记一个已获得的租期，同一持有者重入时只增加计数
+     *
+     * @param lockName 锁名称
+     * @param field    锁hash中持有者的字段
+     */
+    public Lease register(String lockName, String field) {
+        Lease lease = new Lease(lockName, field);
+        leases.merge(lease, 1, Integer::sum);
+        startIfNecessary();
+        return lease;
+    }
+
+    public void unregister(Lease lease) {
+        leases.computeIfPresent(lease, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * 登记一个已获得的信号量许可，许可需按{@link #getLeaseTime()}获取
+     */
+    public Permit registerPermit(RPermitExpirableSemaphore semaphore, String permitId) {
+        Permit permit = new Permit(semaphore, permitId);
+        permits.add(permit);
+        startIfNecessary();
+        return permit;
+    }
+
+    public void unregisterPermit(Permit permit) {
+        permits.remove(permit);
+    }
+
+    /**
+     * 与Redisson可重入锁一致的持有者字段
+     */
+    public String getOwnerField(long threadId) {
+        return redissonClient.getId() + ":" + threadId;
+    }
+
+    /**
+     * 立即续期一次，不登记到调度
+     *
+     * @param leaseMillis 新的租期，单位：毫秒
+     */
+    public CompletionStage<Boolean> renewAsync(String lockName, String field, long leaseMillis) {
+        return redissonClient.getScript(StringCodec.INSTANCE).<Number>evalAsync(RScript.Mode.READ_WRITE, RENEW_SCRIPT,
+                RScript.ReturnType.INTEGER, Collections.singletonList(lockName), leaseMillis, field)
+                .thenApply(result -> result.longValue() == 1L);
+    }
+
+    public CompletionStage<Boolean> isHeldAsync(String lockName, String field) {
+        return redissonClient.getMap(lockName, StringCodec.INSTANCE).containsKeyAsync(field);
+    }
+
+    private void startIfNecessary() {
+        if (task == null) {
+            synchronized (this) {
+                if (task == null) {
+                    long period = leaseTime / 3;
+                    nextTick = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(period);
+                    task = LockScheduler.INSTANCE.scheduleAtFixedRate(this::renew, period, period, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    public synchronized void shutdown() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * 只在调度线程中执行
+     */
+    private void renew() {
+        long tick = nextTick;
+        nextTick += TimeUnit.MILLISECONDS.toNanos(leaseTime / 3);
+        if (!leases.isEmpty()) {
+            List<Lease> renewing = new ArrayList<>(leases.keySet());
+            for (int from = 0; from < renewing.size(); from += MAX_BATCH_SIZE) {
+                renewBatch(renewing.subList(from, Math.min(from + MAX_BATCH_SIZE, renewing.size())), tick);
+            }
+        }
+        if (!permits.isEmpty()) {
+            renewPermits(new ArrayList<>(permits), tick);
+        }
+    }
+
+    /**
+     * 许可的续期脚本由Redisson提供，无法放入pipeline，所有命令一次性异步发出后统一处理结果
+     */
+    private void renewPermits(List<Permit> renewing, long tick) {
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(renewing.size());
+        for (Permit permit : renewing) {
+            results.add(permit.semaphore.updateLeaseTimeAsync(permit.permitId, leaseTime, TimeUnit.MILLISECONDS)
+                    .toCompletableFuture());
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, error) -> {
+            klockMetrics.recordRenewal(renewing.size(), System.nanoTime() - tick);
+            if (error != null) {
+                log.warn("Fail to renew some of {} semaphore permits", renewing.size(), error);
+            }
+            Iterator<CompletableFuture<Boolean>> iterator = results.iterator();
+            for (Permit permit : renewing) {
+                CompletableFuture<Boolean> result = iterator.next();
+                if (!result.isCompletedExceptionally() && !result.join() && permits.remove(permit)) {
+                    klockMetrics.recordLeaseLost();
+                    log.warn("Semaphore permit of {} has expired, stop renewing it", permit.semaphore.getName());
+                }
+            }
+        });
+    }
+
+    private void renewBatch(List<Lease> batchLeases, long tick) {
+        RBatch batch = redissonClient.createBatch(BatchOptions.defaults());
+        List<RFuture<Number>> results = new ArrayList<>(batchLeases.size());
+        for (Lease lease : batchLeases) {
+            results.add(batch.getScript(StringCodec.INSTANCE).<Number>evalAsync(RScript.Mode.READ_WRITE, RENEW_SCRIPT,
+                    RScript.ReturnType.INTEGER, Collections.singletonList(lease.lockName), leaseTime, lease.field));
+        }
+        batch.executeAsync().whenComplete((response, error) -> {
+            //续期延迟：从计划的续期时间到批量续期完成
+            klockMetrics.recordRenewal(batchLeases.size(), System.nanoTime() - tick);
+            if (error != null) {
+                log.warn("Fail to renew {} lock leases", batchLeases.size(), error);
+                return;
+            }
+            Iterator<RFuture<Number>> iterator = results.iterator();
+            for (Lease lease : batchLeases) {
+                Number renewed = iterator.next().getNow();
+                if (renewed != null && renewed.intValue() == 0 && leases.remove(lease) != null) {
+                    klockMetrics.recordLeaseLost();
+                    log.warn("Lock({}) is no longer held by {}, stop renewing its lease", lease.lockName, lease.field);
+                }
+            }
+        });
+    }
+
+    /**
+     * 登记的信号量许可，按对象本身区分
+     */
+    public static final class Permit {
+
+        private final RPermitExpirableSemaphore semaphore;
+
+        private final String permitId;
+
+        Permit(RPermitExpirableSemaphore semaphore, String permitId) {
+            this.semaphore = semaphore;
+            this.permitId = permitId;
+        }
+    }
+
+    /**
+     * 登记的租期，按锁名称和持有者字段区分
+     */
+    public static final class Lease {
+
+        private final String lockName;
+
+        private final String field;
+
+        Lease(String lockName, String field) {
+            this.lockName = lockName;
+            this.field = field;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Lease)) {
+                return false;
+            }
+            Lease that = (Lease) other;
+            return lockName.equals(that.lockName) && field.equals(that.field);
+        }
+
+        @Override
+        public int hashCode() {
+            return lockName.hashCode() * 31 + field.hashCode();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import io.lettuce.core.RedisCommandInterruptedException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 基于spring-data-redis底层Lettuce连接的可重入锁，锁是一个字符串，值为 持有者#重入次数，
+ * 首次加锁相当于SET NX PX，重入和释放在脚本中校验持有者，比Redisson的hash结构占用更少的内存和命令。
+ * 所有命令都通过Lettuce的异步接口发出，异步加锁不占用任何线程；脚本按SHA缓存，执行时使用EVALSHA
+ *
+ * @author kl
+ */
+public class LettuceLock implements Lock {
+
+    /**
+     * 加锁成功返回0或fencing token，被他人持有时返回锁剩余过期时间的相反数
+     */
+    private static final LettuceScript ACQUIRE_SCRIPT = new LettuceScript(
+            "local prefix = ARGV[1] .. '#'; " +
+            "local count = 1; " +
+            "local value = redis.call('get', KEYS[1]); " +
+            "if value then " +
+                "if string.sub(value, 1, #prefix) ~= prefix then " +
+                    "return -math.max(redis.call('pttl', KEYS[1]), 1); " +
+                "end; " +
+                "count = tonumber(string.sub(value, #prefix + 1)) + 1; " +
+            "end; " +
+            "redis.call('set', KEYS[1], prefix .. count, 'px', ARGV[2]); " +
+            "if ARGV[3] == '1' then " +
+                "return redis.call('incr', KEYS[2]); " +
+            "end; " +
+            "return 0;");
+
+    /**
+     * 返回1已释放，0锁已过期，-1锁被他人持有
+     */
+    private static final LettuceScript RELEASE_SCRIPT = new LettuceScript(
+            "local prefix = ARGV[1] .. '#'; " +
+            "local value = redis.call('get', KEYS[1]); " +
+            "if not value then " +
+                "return 0; " +
+            "end; " +
+            "if string.sub(value, 1, #prefix) ~= prefix then " +
+                "return -1; " +
+            "end; " +
+            "local count = tonumber(string.sub(value, #prefix + 1)) - 1; " +
+            "if count > 0 then " +
+                "redis.call('set', KEYS[1], prefix .. count, 'px', math.max(redis.call('pttl', KEYS[1]), 1)); " +
+            "else " +
+                "redis.call('del', KEYS[1]); " +
+            "end; " +
+            "return 1;");
+
+    /**
+     * token计数器key的前缀，与FencedLock一致
+     */
+    private static final String FENCING_KEY_PREFIX = "klock_fencing:";
+
+    private static final long MIN_RETRY_INTERVAL = 10L;
+
+    private static final long MAX_RETRY_INTERVAL = 200L;
+
+    private final RedisClusterAsyncCommands<byte[], byte[]> commands;
+
+    private final LettuceRenewalScheduler renewalScheduler;
+
+    private final String clientId;
+
+    private final long commandTimeout;
+
+    private final LockInfo lockInfo;
+
+    private final byte[][] keys;
+
+    private volatile long fencingToken;
+
+    private volatile LettuceRenewalScheduler.Lease lease;
+
+    /**
+     * @param commandTimeout 同步方法等待命令结果的最长时间，单位：毫秒
+     */
+    LettuceLock(RedisClusterAsyncCommands<byte[], byte[]> commands, LettuceRenewalScheduler renewalScheduler,
+                String clientId, long commandTimeout, LockInfo lockInfo) {
+        this.commands = commands;
+        this.renewalScheduler = renewalScheduler;
+        this.clientId = clientId;
+        this.commandTimeout = commandTimeout;
+        this.lockInfo = lockInfo;
+        this.keys = new byte[][]{LettuceScript.toBytes(lockInfo.getLockName()),
+                LettuceScript.toBytes(LockKeys.prefixName(FENCING_KEY_PREFIX, lockInfo.getLockName()))};
+    }
+
+    @Override
+    public boolean acquire() {
+        return acquire(lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean acquire(long waitTime, TimeUnit unit) {
+        long ownerId = Thread.currentThread().getId();
+        long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        long interval = MIN_RETRY_INTERVAL;
+        try {
+            while (true) {
+                long result = await(tryAcquire(ownerId));
+                if (result >= 0) {
+                    return true;
+                }
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.MILLISECONDS.sleep(nextInterval(interval, -result, remaining));
+                interval = Math.min(interval << 1, MAX_RETRY_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public ReleaseResult unlock() {
+        return await(unlockAsync(Thread.currentThread().getId()).toCompletableFuture());
+    }
+
+    @Override
+    public long getFencingToken() {
+        return fencingToken;
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId) {
+        return acquireAsync(ownerId, lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * 每次尝试都是一个异步命令，重试间隔由锁调度线程计时
+     */
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId, long waitTime, TimeUnit unit) {
+        CompletableFuture<Boolean> acquired = new CompletableFuture<>();
+        tryAcquireAsync(ownerId, System.nanoTime() + unit.toNanos(waitTime), MIN_RETRY_INTERVAL, acquired);
+        return acquired;
+    }
+
+    @Override
+    public CompletionStage<ReleaseResult> unlockAsync(long ownerId) {
+        LettuceRenewalScheduler.Lease current = lease;
+        if (current != null) {
+            renewalScheduler.unregister(current);
+            lease = null;
+        }
+        return RELEASE_SCRIPT.eval(commands, new byte[][]{keys[0]}, getOwner(ownerId)).thenApply(result -> {
+            if (result == 1L) {
+                return ReleaseResult.RELEASED;
+            }
+            return result == 0L ? ReleaseResult.LEASE_EXPIRED : ReleaseResult.NOT_OWNER;
+        });
+    }
+
+    @Override
+    public boolean isRenewable() {
+        return true;
+    }
+
+    @Override
+    public CompletionStage<Boolean> renewAsync(long ownerId) {
+        long leaseTime = lockInfo.getLeaseTime() < 0 ? renewalScheduler.getLeaseTime()
+                : TimeUnit.SECONDS.toMillis(lockInfo.getLeaseTime());
+        return renewalScheduler.renewAsync(lockInfo.getLockName(), getOwner(ownerId), leaseTime);
+    }
+
+    @Override
+    public CompletionStage<Boolean> isHeldAsync(long ownerId) {
+        String prefix = getOwner(ownerId) + "#";
+        return commands.get(keys[0]).toCompletableFuture()
+                .thenApply(value -> value != null && new String(value, StandardCharsets.UTF_8).startsWith(prefix));
+    }
+
+    private void tryAcquireAsync(long ownerId, long deadline, long interval, CompletableFuture<Boolean> acquired) {
+        tryAcquire(ownerId).whenComplete((result, error) -> {
+            if (error != null) {
+                acquired.completeExceptionally(error);
+                return;
+            }
+            if (result >= 0) {
+                acquired.complete(true);
+                return;
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                acquired.complete(false);
+                return;
+            }
+            LockScheduler.INSTANCE.schedule(() -> tryAcquireAsync(ownerId, deadline,
+                    Math.min(interval << 1, MAX_RETRY_INTERVAL), acquired),
+                    nextInterval(interval, -result, remaining), TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * 租期为-1时按续期调度的租期加锁，加锁成功后登记到续期调度
+     *
+     * @return 加锁成功时为0或fencing token，失败时为锁剩余过期时间的相反数
+     */
+    private CompletableFuture<Long> tryAcquire(long ownerId) {
+        boolean renewable = lockInfo.getLeaseTime() < 0;
+        long leaseTime = renewable ? renewalScheduler.getLeaseTime() : TimeUnit.SECONDS.toMillis(lockInfo.getLeaseTime());
+        String owner = getOwner(ownerId);
+        return ACQUIRE_SCRIPT.eval(commands, keys, owner, String.valueOf(leaseTime), lockInfo.isFenced() ? "1" : "0")
+                .thenApply(result -> {
+                    if (result >= 0) {
+                        fencingToken = result;
+                        if (renewable) {
+                            lease = renewalScheduler.register(lockInfo.getLockName(), owner);
+                        }
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * 同步方法等待异步命令的结果，与Lettuce同步接口一样受命令超时时间限制
+     */
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(commandTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisCommandInterruptedException(e);
+        } catch (TimeoutException e) {
+            throw new RedisCommandTimeoutException("Command timed out after " + commandTimeout + "ms");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    private String getOwner(long ownerId) {
+        return clientId + ":" + ownerId;
+    }
+
+    /**
+     * 按指数退避重试，不超过锁的剩余过期时间和剩余等待时间
+     */
+    private long nextInterval(long interval, long ttl, long remaining) {
+        return Math.max(1L, Math.min(interval, Math.min(ttl, remaining)));
+    }
+}
@@ -0,0 +1,74 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.klock.metrics.KlockMetrics;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.LockType;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.UUID;
+
+/**
+ * 复用应用已有的spring-data-redis的Lettuce连接加锁，不再创建Redisson客户端和第二个Netty线程池。
+ * 直接使用底层Lettuce连接的异步命令，默认与应用共用同一个连接；锁为字符串结构，仅支持可重入锁
+ *
+ * @author kl
+ */
+public class LettuceLockBackend implements LockBackend {
+
+    /**
+     * 租期为-1时加锁使用的租期，与Redisson看门狗默认超时一致，单位：毫秒
+     */
+    private static final long RENEWAL_LEASE_TIME = 30000L;
+
+    @Autowired
+    private RedisConnectionFactory redisConnectionFactory;
+
+    @Autowired(required = false)
+    private KlockMetrics klockMetrics = KlockMetrics.NONE;
+
+    private final String clientId = UUID.randomUUID().toString();
+
+    private RedisConnection connection;
+
+    private RedisClusterAsyncCommands<byte[], byte[]> commands;
+
+    private long commandTimeout;
+
+    private LettuceRenewalScheduler renewalScheduler;
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    public void init() {
+        if (!(redisConnectionFactory instanceof LettuceConnectionFactory)) {
+            throw new IllegalStateException("Lettuce backend requires a LettuceConnectionFactory, but got "
+                    + redisConnectionFactory.getClass().getName());
+        }
+        LettuceConnectionFactory connectionFactory = (LettuceConnectionFactory) redisConnectionFactory;
+        commandTimeout = connectionFactory.getClientConfiguration().getCommandTimeout().toMillis();
+        connection = connectionFactory.getConnection();
+        commands = (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+        renewalScheduler = new LettuceRenewalScheduler(commands, klockMetrics, RENEWAL_LEASE_TIME);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        renewalScheduler.shutdown();
+        connection.close();
+    }
+
+    @Override
+    public Lock getLock(LockInfo lockInfo) {
+        if (lockInfo.getLockNames() != null || lockInfo.getType() != LockType.Reentrant) {
+            throw new IllegalArgumentException("Lettuce backend only supports single key "
+                    + LockType.Reentrant + " lock, but got " + lockInfo.getType()
+                    + (lockInfo.getLockNames() != null ? " with multiKey" : ""));
+        }
+        return new LettuceLock(commands, renewalScheduler, clientId, commandTimeout, lockInfo);
+    }
+}
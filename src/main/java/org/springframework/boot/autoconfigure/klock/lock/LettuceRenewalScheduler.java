@@ -0,0 +1,180 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.klock.metrics.KlockMetrics;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lettuce锁的统一续期调度，与LeaseRenewalScheduler一致：未指定租期的锁登记到这里，
+ * 每个周期一次性发出所有登记租期的续期命令，命令在同一连接上流水线发送，不为每个锁启动定时器
+ *
+ * @author kl
+ */
+@Slf4j
+final class LettuceRenewalScheduler {
+
+    /**
+     * 仍由持有者持有时延长过期时间并返回1，否则返回0
+     */
+    private static final LettuceScript RENEW_SCRIPT = new LettuceScript(
+            "local value = redis.call('get', KEYS[1]); " +
+            "if value and string.sub(value, 1, #ARGV[1] + 1) == ARGV[1] .. '#' then " +
+                "return redis.call('pexpire', KEYS[1], ARGV[2]); " +
+            "end; " +
+            "return 0;");
+
+    /**
+     * 一批中最多的续期命令数
+     */
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private final RedisClusterAsyncCommands<byte[], byte[]> commands;
+
+    private final KlockMetrics klockMetrics;
+
+    private final long leaseTime;
+
+    /**
+     * 登记的租期及其重入次数
+     */
+    private final Map<Lease, Integer> leases = new ConcurrentHashMap<>();
+
+    private volatile ScheduledFuture<?> task;
+
+    private long nextTick;
+
+    /**
+     * @param leaseTime 登记到调度的锁加锁和续期使用的租期，单位：毫秒
+     */
+    LettuceRenewalScheduler(RedisClusterAsyncCommands<byte[], byte[]> commands, KlockMetrics klockMetrics,
+                            long leaseTime) {
+        this.commands = commands;
+        this.klockMetrics = klockMetrics;
+        this.leaseTime = leaseTime;
+    }
+
+    long getLeaseTime() {
+        return leaseTime;
+    }
+
+    /**
+     * 登记一个已获得的租期，同一持有者重入时只增加计数
+     */
+    Lease register(String lockName, String owner) {
+        Lease lease = new Lease(lockName, owner);
+        leases.merge(lease, 1, Integer::sum);
+        startIfNecessary();
+        return lease;
+    }
+
+    void unregister(Lease lease) {
+        leases.computeIfPresent(lease, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * 立即续期一次，不登记到调度
+     *
+     * @param leaseMillis 新的租期，单位：毫秒
+     */
+    CompletableFuture<Boolean> renewAsync(String lockName, String owner, long leaseMillis) {
+        return RENEW_SCRIPT.eval(commands, new byte[][]{LettuceScript.toBytes(lockName)},
+                owner, String.valueOf(leaseMillis)).thenApply(result -> result == 1L);
+    }
+
+    private void startIfNecessary() {
+        if (task == null) {
+            synchronized (this) {
+                if (task == null) {
+                    long period = leaseTime / 3;
+                    nextTick = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(period);
+                    task = LockScheduler.INSTANCE.scheduleAtFixedRate(this::renew, period, period, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    synchronized void shutdown() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * 只在调度线程中执行，只发出命令，不等待结果
+     */
+    private void renew() {
+        long tick = nextTick;
+        nextTick += TimeUnit.MILLISECONDS.toNanos(leaseTime / 3);
+        if (leases.isEmpty()) {
+            return;
+        }
+        List<Lease> renewing = new ArrayList<>(leases.keySet());
+        for (int from = 0; from < renewing.size(); from += MAX_BATCH_SIZE) {
+            renewBatch(renewing.subList(from, Math.min(from + MAX_BATCH_SIZE, renewing.size())), tick);
+        }
+    }
+
+    private void renewBatch(List<Lease> batchLeases, long tick) {
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(batchLeases.size());
+        for (Lease lease : batchLeases) {
+            results.add(renewAsync(lease.lockName, lease.owner, leaseTime));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, error) -> {
+            //续期延迟：从计划的续期时间到这一批续期全部完成
+            klockMetrics.recordRenewal(batchLeases.size(), System.nanoTime() - tick);
+            if (error != null) {
+                log.warn("Fail to renew some of {} lock leases", batchLeases.size(), error);
+            }
+            Iterator<CompletableFuture<Boolean>> iterator = results.iterator();
+            for (Lease lease : batchLeases) {
+                CompletableFuture<Boolean> result = iterator.next();
+                if (!result.isCompletedExceptionally() && !result.join() && leases.remove(lease) != null) {
+                    klockMetrics.recordLeaseLost();
+                    log.warn("Lock({}) is no longer held by {}, stop renewing its lease", lease.lockName, lease.owner);
+                }
+            }
+        });
+    }
+
+    /**
+     * 登记的租期，按锁名称和持有者区分
+     */
+    static final class Lease {
+
+        private final String lockName;
+
+        private final String owner;
+
+        Lease(String lockName, String owner) {
+            this.lockName = lockName;
+            this.owner = owner;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Lease)) {
+                return false;
+            }
+            Lease that = (Lease) other;
+            return lockName.equals(that.lockName) && owner.equals(that.owner);
+        }
+
+        @Override
+        public int hashCode() {
+            return lockName.hashCode() * 31 + owner.hashCode();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 通过Lettuce异步命令执行的Lua脚本，返回整数。
+ * 先按SHA执行EVALSHA，服务端没有缓存该脚本时再用EVAL执行一次，之后的EVALSHA即可命中
+ *
+ * @author kl
+ */
+final class LettuceScript {
+
+    private final String source;
+
+    private final String sha1;
+
+    LettuceScript(String source) {
+        this.source = source;
+        this.sha1 = new DefaultRedisScript<>(source, Long.class).getSha1();
+    }
+
+    CompletableFuture<Long> eval(RedisClusterAsyncCommands<byte[], byte[]> commands, byte[][] keys, String... args) {
+        byte[][] values = new byte[args.length][];
+        for (int i = 0; i < args.length; i++) {
+            values[i] = toBytes(args[i]);
+        }
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        commands.<Long>evalsha(sha1, ScriptOutputType.INTEGER, keys, values).whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+            } else if (isNoScript(error)) {
+                commands.<Long>eval(source, ScriptOutputType.INTEGER, keys, values).whenComplete((retried, retryError) -> {
+                    if (retryError == null) {
+                        result.complete(retried);
+                    } else {
+                        result.completeExceptionally(retryError);
+                    }
+                });
+            } else {
+                result.completeExceptionally(error);
+            }
+        });
+        return result;
+    }
+
+    static byte[] toBytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean isNoScript(Throwable error) {
+        return error.getMessage() != null && error.getMessage().startsWith("NOSCRIPT");
+    }
+}
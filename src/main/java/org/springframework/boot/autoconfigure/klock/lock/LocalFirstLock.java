@@ -0,0 +1,148 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 两级锁：同一进程内的线程先在同名的本地锁上排队，只有本地胜出的线程才去竞争Redis锁，
+ * 热点key对Redis的请求和订阅数从按线程计降为按节点计。
+ * 本地锁与Redis锁共用一个等待时间，本地等待消耗的时间会从Redis的等待时间中扣除。
+ * 异步加锁的持有者不是线程，不经过本地锁。
+ * 本地锁只能由加锁线程释放，同步加锁期间不能通过unlockAsync强制释放
+ *
+ * @author kl
+ */
+public class LocalFirstLock implements Lock {
+
+    private final Lock delegate;
+
+    private final java.util.concurrent.locks.Lock localLock;
+
+    private final LockInfo lockInfo;
+
+    /**
+     * 登记表的强制释放会在其他线程读取
+     */
+    private volatile boolean localLocked;
+
+    public LocalFirstLock(Lock delegate, java.util.concurrent.locks.Lock localLock, LockInfo lockInfo) {
+        this.delegate = delegate;
+        this.localLock = localLock;
+        this.lockInfo = lockInfo;
+    }
+
+    @Override
+    public boolean acquire() {
+        return acquire(lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean acquire(long waitTime, TimeUnit unit) {
+        long waitNanos = unit.toNanos(waitTime);
+        long start = System.nanoTime();
+        if (!localLocked) {
+            try {
+                if (!localLock.tryLock(waitNanos, TimeUnit.NANOSECONDS)) {
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            localLocked = true;
+        }
+
+        long remaining = waitNanos - (System.nanoTime() - start);
+        boolean acquired = false;
+        try {
+            acquired = delegate.acquire(Math.max(remaining, 0L), TimeUnit.NANOSECONDS);
+            return acquired;
+        } finally {
+            //Redis加锁失败或抛出异常时都要释放本地锁，否则同节点的线程会一直等待
+            if (!acquired) {
+                unlockLocal();
+            }
+        }
+    }
+
+    /**
+     * 本地锁同样只尝试一次，被同节点线程持有时不访问Redis
+     */
+    @Override
+    public boolean tryAcquire() {
+        if (!localLocked) {
+            if (!localLock.tryLock()) {
+                return false;
+            }
+            localLocked = true;
+        }
+        boolean acquired = false;
+        try {
+            acquired = delegate.tryAcquire();
+            return acquired;
+        } finally {
+            if (!acquired) {
+                unlockLocal();
+            }
+        }
+    }
+
+    @Override
+    public ReleaseResult unlock() {
+        try {
+            return delegate.unlock();
+        } finally {
+            unlockLocal();
+        }
+    }
+
+    @Override
+    public long getFencingToken() {
+        return delegate.getFencingToken();
+    }
+
+    @Override
+    public boolean isLocallyHeld() {
+        return localLocked;
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId) {
+        return delegate.acquireAsync(ownerId);
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId, long waitTime, TimeUnit unit) {
+        return delegate.acquireAsync(ownerId, waitTime, unit);
+    }
+
+    @Override
+    public CompletionStage<ReleaseResult> unlockAsync(long ownerId) {
+        return delegate.unlockAsync(ownerId);
+    }
+
+    @Override
+    public boolean isRenewable() {
+        return delegate.isRenewable();
+    }
+
+    @Override
+    public CompletionStage<Boolean> renewAsync(long ownerId) {
+        return delegate.renewAsync(ownerId);
+    }
+
+    @Override
+    public CompletionStage<Boolean> isHeldAsync(long ownerId) {
+        return delegate.isHeldAsync(ownerId);
+    }
+
+    private void unlockLocal() {
+        if (localLocked) {
+            localLocked = false;
+            localLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按锁名称一一对应的JVM本地锁，只有同名的锁共用一个本地锁，不同名称之间互不影响。
+ * 本地锁以弱引用缓存，正在持有或等待的线程通过加锁对象引用着它，不会被回收；
+ * 没有线程使用后随GC回收，内存只与同时在用的锁名称数量有关
+ *
+ * @author kl
+ */
+public class LocalLocks {
+
+    private final Cache<String, ReentrantLock> locks = Caffeine.newBuilder().weakValues().build();
+
+    public java.util.concurrent.locks.Lock get(String lockName) {
+        return locks.get(lockName, key -> new ReentrantLock());
+    }
+}
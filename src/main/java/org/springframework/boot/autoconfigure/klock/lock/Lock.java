@@ -1,5 +1,11 @@
 package org.springframework.boot.autoconfigure.klock.lock;
 
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Created by kl on 2017/12/29.
  */
@@ -7,6 +13,128 @@ public interface Lock{
 
     boolean acquire();
 
-    boolean release();
-}
+    /**
+     * 按指定的等待时间获取锁，租期仍以锁信息为准
+     *
+     * @param waitTime 最长等待时间
+     * @param unit     时间单位
+     * @return 是否获得锁
+     */
+    default boolean acquire(long waitTime, TimeUnit unit) {
+        return acquire();
+    }
+
+    /**
+     * 不等待的加锁，只做一次原子尝试，不订阅锁的释放通知，租期仍以锁信息为准
+     *
+     * @return 是否获得锁
+     */
+    default boolean tryAcquire() {
+        return acquire(0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 释放当前线程持有的锁
+     *
+     * @return 是否释放成功
+     */
+    default boolean release() {
+        return unlock().isReleased();
+    }
+
+    /**
+     * 校验持有者并释放当前线程持有的锁，持有者校验与释放在一次调用中完成
+     *
+     * @return 释放结果
+     */
+    ReleaseResult unlock();
+
+    /**
+     * 最近一次加锁获得的fencing token，同一锁名称下单调递增，从1开始；
+     * 不支持fencing token的锁返回0
+     */
+    default long getFencingToken() {
+        return 0L;
+    }
+
+    /**
+     * 是否持有只能由加锁线程释放的本地锁，持有时其他线程无法完整释放这次加锁
+     */
+    default boolean isLocallyHeld() {
+        return false;
+    }
 
+    /**
+     * 异步获取锁，不阻塞调用线程
+     *
+     * @param ownerId 锁持有者标识，释放时需使用同一个标识，可在任意线程释放
+     * @return 是否获得锁
+     */
+    default CompletionStage<Boolean> acquireAsync(long ownerId) {
+        return unsupported("acquireAsync");
+    }
+
+    /**
+     * 按指定的等待时间异步获取锁，租期仍以锁信息为准，不支持单独指定等待时间的锁按锁信息的等待时间获取
+     *
+     * @param ownerId  锁持有者标识，释放时需使用同一个标识，可在任意线程释放
+     * @param waitTime 最长等待时间
+     * @param unit     时间单位
+     * @return 是否获得锁
+     */
+    default CompletionStage<Boolean> acquireAsync(long ownerId, long waitTime, TimeUnit unit) {
+        return acquireAsync(ownerId);
+    }
+
+    /**
+     * 异步释放ownerId持有的锁，不阻塞调用线程
+     *
+     * @param ownerId 获取锁时使用的持有者标识
+     * @return 是否释放成功，锁已超时或不再由ownerId持有时为false
+     */
+    default CompletionStage<Boolean> releaseAsync(long ownerId) {
+        return unlockAsync(ownerId).thenApply(ReleaseResult::isReleased);
+    }
+
+    /**
+     * 异步校验持有者并释放ownerId持有的锁
+     *
+     * @param ownerId 获取锁时使用的持有者标识
+     * @return 释放结果
+     */
+    default CompletionStage<ReleaseResult> unlockAsync(long ownerId) {
+        return unsupported("unlockAsync");
+    }
+
+    /**
+     * 是否支持按ownerId续期和查询持有状态，不支持时renewAsync和isHeldAsync以UnsupportedOperationException失败
+     */
+    default boolean isRenewable() {
+        return false;
+    }
+
+    /**
+     * 异步把ownerId持有的锁的租期延长为锁信息中的租期，租期为-1时延长一个看门狗周期
+     *
+     * @param ownerId 获取锁时使用的持有者标识
+     * @return 是否续期成功，锁已超时或不再由ownerId持有时为false
+     */
+    default CompletionStage<Boolean> renewAsync(long ownerId) {
+        return unsupported("renewAsync");
+    }
+
+    /**
+     * 异步查询锁是否仍由ownerId持有
+     *
+     * @param ownerId 获取锁时使用的持有者标识
+     */
+    default CompletionStage<Boolean> isHeldAsync(long ownerId) {
+        return unsupported("isHeldAsync");
+    }
+
+    static <T> CompletionStage<T> unsupported(String operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(new UnsupportedOperationException(operation + " is not supported"));
+        return future;
+    }
+}
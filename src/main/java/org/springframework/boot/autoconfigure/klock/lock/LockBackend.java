@@ -0,0 +1,16 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+
+/**
+ * 锁的存储实现，通过spring.klock.backend选择
+ *
+ * @author kl
+ */
+public interface LockBackend {
+
+    /**
+     * 按锁信息创建本次加锁使用的锁对象
+     */
+    Lock getLock(LockInfo lockInfo);
+}
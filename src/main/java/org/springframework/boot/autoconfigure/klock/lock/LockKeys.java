@@ -0,0 +1,20 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+/**
+ * 与锁关联的key和频道名称，与Redisson的规则一致：锁名称已含{hashtag}时原样拼接，否则整个名称作为hashtag，
+ * 集群模式下关联的key与锁位于同一slot
+ *
+ * @author kl
+ */
+public final class LockKeys {
+
+    private LockKeys() {
+    }
+
+    /**
+     * @param prefix 带分隔符的前缀，如"klock_fencing:"
+     */
+    public static String prefixName(String prefix, String lockName) {
+        return lockName.contains("{") ? prefix + lockName : prefix + "{" + lockName + "}";
+    }
+}
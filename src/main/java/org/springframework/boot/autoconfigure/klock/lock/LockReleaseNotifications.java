@@ -0,0 +1,110 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 订阅Redisson锁的释放通知频道，供自行用脚本加锁的锁在释放通知上等待而不是轮询。
+ * 同一锁名称的等待者共用一个订阅，最后一个等待者离开时取消订阅
+ *
+ * @author kl
+ */
+final class LockReleaseNotifications {
+
+    private static final String CHANNEL_PREFIX = "redisson_lock__channel";
+
+    private final RedissonClient redissonClient;
+
+    private final Map<String, Subscription> subscriptions = new HashMap<>();
+
+    LockReleaseNotifications(RedissonClient redissonClient) {
+        this.redissonClient = redissonClient;
+    }
+
+    /**
+     * 订阅锁名称的释放通知，订阅在{@link Subscription#whenSubscribed()}完成后生效，
+     * 无论订阅是否成功，使用完毕后都必须调用{@link #unsubscribe(Subscription)}
+     */
+    Subscription subscribe(String lockName) {
+        synchronized (subscriptions) {
+            Subscription subscription = subscriptions.get(lockName);
+            if (subscription == null) {
+                subscription = new Subscription(lockName, redissonClient.getTopic(getChannelName(lockName),
+                        StringCodec.INSTANCE));
+                subscriptions.put(lockName, subscription);
+                Subscription created = subscription;
+                subscription.listenerId = subscription.topic
+                        .addListenerAsync(String.class, (channel, message) -> created.onRelease())
+                        .toCompletableFuture();
+            }
+            subscription.refs++;
+            return subscription;
+        }
+    }
+
+    void unsubscribe(Subscription subscription) {
+        synchronized (subscriptions) {
+            if (--subscription.refs > 0) {
+                return;
+            }
+            subscriptions.remove(subscription.lockName, subscription);
+        }
+        subscription.listenerId.thenAccept(listenerId -> subscription.topic.removeListenerAsync(listenerId));
+    }
+
+    /**
+     * 与Redisson锁的频道名称一致，锁名称不含hashtag时整个名称作为hashtag
+     */
+    static String getChannelName(String lockName) {
+        return LockKeys.prefixName(CHANNEL_PREFIX + ":", lockName);
+    }
+
+    /**
+     * 单个锁名称的订阅，每收到一次释放通知完成当前一轮的等待
+     */
+    static final class Subscription {
+
+        private final String lockName;
+
+        private final RTopic topic;
+
+        private CompletableFuture<Integer> listenerId;
+
+        /**
+         * 只在持有subscriptions监视器时访问
+         */
+        private int refs;
+
+        private CompletableFuture<Void> released = new CompletableFuture<>();
+
+        Subscription(String lockName, RTopic topic) {
+            this.lockName = lockName;
+            this.topic = topic;
+        }
+
+        CompletableFuture<?> whenSubscribed() {
+            return listenerId;
+        }
+
+        /**
+         * 下一次释放通知，需在尝试加锁之前获取，尝试失败后再等待，尝试期间的释放不会被错过
+         */
+        synchronized CompletableFuture<Void> nextRelease() {
+            return released;
+        }
+
+        private void onRelease() {
+            CompletableFuture<Void> current;
+            synchronized (this) {
+                current = released;
+                released = new CompletableFuture<>();
+            }
+            current.complete(null);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * 锁内部异步重试和续期的调度线程，只负责触发Redis调用，不执行业务逻辑，按需创建
+ *
+ * @author kl
+ */
+final class LockScheduler {
+
+    static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "klock-lock-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private LockScheduler() {
+    }
+}
@@ -0,0 +1,178 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.LockType;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MemoryLockBackend创建的锁，读锁共享，信号量最多permits个持有者，公平锁按到达顺序获取，其余类型互斥。
+ * 多key锁按已排序的名称依次加锁并共用等待时间，任一失败则释放已获得的锁
+ *
+ * @author kl
+ */
+public class MemoryLock implements Lock {
+
+    private final MemoryLockBackend backend;
+
+    private final LockInfo lockInfo;
+
+    private final List<String> lockNames;
+
+    private final boolean shared;
+
+    /**
+     * 共享持有的上限，0表示不限
+     */
+    private final int permits;
+
+    private final boolean fair;
+
+    private volatile long fencingToken;
+
+    public MemoryLock(MemoryLockBackend backend, LockInfo lockInfo) {
+        this.backend = backend;
+        this.lockInfo = lockInfo;
+        List<String> names = lockInfo.getLockNames();
+        this.lockNames = names != null ? names : Collections.singletonList(lockInfo.getLockName());
+        this.shared = lockInfo.getType() == LockType.Read || lockInfo.getType() == LockType.Semaphore;
+        this.permits = lockInfo.getType() == LockType.Semaphore ? lockInfo.getPermits() : 0;
+        this.fair = lockInfo.getType() == LockType.Fair;
+    }
+
+    @Override
+    public boolean acquire() {
+        return acquire(lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean acquire(long waitTime, TimeUnit unit) {
+        long ownerId = Thread.currentThread().getId();
+        long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        for (int i = 0; i < lockNames.size(); i++) {
+            boolean acquired;
+            try {
+                acquired = backend.acquire(lockNames.get(i), ownerId, shared, permits, fair,
+                        getLeaseTimeNanos(), deadline - System.nanoTime());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            if (!acquired) {
+                releaseAcquired(i, ownerId);
+                return false;
+            }
+        }
+        onAcquired();
+        return true;
+    }
+
+    @Override
+    public ReleaseResult unlock() {
+        return unlock(Thread.currentThread().getId());
+    }
+
+    @Override
+    public long getFencingToken() {
+        return fencingToken;
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId) {
+        return acquireAsync(ownerId, lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId, long waitTime, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        return acquireAsync(0, ownerId, deadline).thenApply(acquired -> {
+            if (acquired) {
+                onAcquired();
+            }
+            return acquired;
+        });
+    }
+
+    @Override
+    public CompletionStage<ReleaseResult> unlockAsync(long ownerId) {
+        return CompletableFuture.completedFuture(unlock(ownerId));
+    }
+
+    @Override
+    public boolean isRenewable() {
+        return true;
+    }
+
+    @Override
+    public CompletionStage<Boolean> renewAsync(long ownerId) {
+        boolean renewed = true;
+        for (String lockName : lockNames) {
+            renewed &= backend.renew(lockName, ownerId, shared, getLeaseTimeNanos());
+        }
+        return CompletableFuture.completedFuture(renewed);
+    }
+
+    @Override
+    public CompletionStage<Boolean> isHeldAsync(long ownerId) {
+        for (String lockName : lockNames) {
+            if (!backend.isHeld(lockName, ownerId, shared)) {
+                return CompletableFuture.completedFuture(false);
+            }
+        }
+        return CompletableFuture.completedFuture(true);
+    }
+
+    private CompletionStage<Boolean> acquireAsync(int index, long ownerId, long deadline) {
+        if (index == lockNames.size()) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return backend.acquireAsync(lockNames.get(index), ownerId, shared, permits, fair,
+                getLeaseTimeNanos(), deadline - System.nanoTime())
+                .thenCompose(acquired -> {
+                    if (!acquired) {
+                        releaseAcquired(index, ownerId);
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    return acquireAsync(index + 1, ownerId, deadline);
+                });
+    }
+
+    /**
+     * 多key锁只要有一个key不再由本持有者持有，整体即视为释放失败
+     */
+    private ReleaseResult unlock(long ownerId) {
+        ReleaseResult result = ReleaseResult.RELEASED;
+        for (String lockName : lockNames) {
+            ReleaseResult released = backend.release(lockName, ownerId, shared);
+            if (!released.isReleased() && result.isReleased()) {
+                result = released;
+            }
+        }
+        return result;
+    }
+
+    private void releaseAcquired(int count, long ownerId) {
+        for (int i = 0; i < count; i++) {
+            backend.release(lockNames.get(i), ownerId, shared);
+        }
+    }
+
+    private void onAcquired() {
+        if (lockInfo.isFenced()) {
+            fencingToken = backend.nextFencingToken();
+        }
+    }
+
+    /**
+     * 租期换算为纳秒，-1表示持有到主动释放为止，JVM内无需续期
+     */
+    private long getLeaseTimeNanos() {
+        long leaseTime = lockInfo.getLeaseTime();
+        return leaseTime < 0 ? leaseTime : TimeUnit.SECONDS.toNanos(leaseTime);
+    }
+}
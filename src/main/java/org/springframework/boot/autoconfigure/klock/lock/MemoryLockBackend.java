@@ -0,0 +1,250 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM内的锁实现，适用于单节点部署和测试，不依赖Redis。
+ * 锁状态保存在ConcurrentHashMap中，每个锁名称一个监视器，不同名称之间互不阻塞；
+ * 租期到期在访问时惰性清理，空闲状态在释放时移除，遗留的过期状态由后台逐个清理，不持有全局锁
+ *
+ * @author kl
+ */
+@Slf4j
+public class MemoryLockBackend implements LockBackend {
+
+    /**
+     * 后台清理过期状态的间隔，单位：秒
+     */
+    private static final long SWEEP_INTERVAL = 30;
+
+    private final ConcurrentHashMap<String, MemoryLockState> states = new ConcurrentHashMap<>(1024);
+
+    /**
+     * fencing token全局单调递增，对每个锁名称同样单调
+     */
+    private final AtomicLong fencingSequence = new AtomicLong();
+
+    private ScheduledFuture<?> sweeper;
+
+    @PostConstruct
+    public void init() {
+        sweeper = LockScheduler.INSTANCE.scheduleWithFixedDelay(this::sweep,
+                SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (sweeper != null) {
+            sweeper.cancel(false);
+        }
+    }
+
+    @Override
+    public Lock getLock(LockInfo lockInfo) {
+        return new MemoryLock(this, lockInfo);
+    }
+
+    long nextFencingToken() {
+        return fencingSequence.incrementAndGet();
+    }
+
+    /**
+     * 当前保存的锁状态数量
+     */
+    int size() {
+        return states.size();
+    }
+
+    boolean acquire(String name, long ownerId, boolean shared, int permits, boolean fair,
+                    long leaseNanos, long waitNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + waitNanos;
+        for (;;) {
+            MemoryLockState state = states.computeIfAbsent(name, key -> new MemoryLockState());
+            synchronized (state) {
+                if (state.retired) {
+                    continue;
+                }
+                long now = System.nanoTime();
+                if (state.tryAcquire(ownerId, shared, permits, fair, leaseNanos, now)) {
+                    return true;
+                }
+                if (deadline - now <= 0) {
+                    return false;
+                }
+                MemoryLockState.Waiter waiter = state.enqueue(ownerId, shared, permits, leaseNanos, deadline, null);
+                try {
+                    while (!waiter.granted && deadline - now > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(state,
+                                Math.min(deadline - now, state.nanosUntilExpiry(now)));
+                        now = System.nanoTime();
+                        //持有者租期到期时没有释放通知，由醒来的等待者推动交接
+                        complete(state.signal(now));
+                    }
+                } catch (InterruptedException e) {
+                    if (waiter.granted) {
+                        state.release(ownerId, shared, System.nanoTime());
+                    } else {
+                        state.cancel(waiter);
+                    }
+                    complete(state.signal(System.nanoTime()));
+                    throw e;
+                }
+                if (waiter.granted) {
+                    return true;
+                }
+                state.cancel(waiter);
+                complete(state.signal(now));
+                return false;
+            }
+        }
+    }
+
+    CompletionStage<Boolean> acquireAsync(String name, long ownerId, boolean shared, int permits, boolean fair,
+                                          long leaseNanos, long waitNanos) {
+        long deadline = System.nanoTime() + waitNanos;
+        for (;;) {
+            MemoryLockState state = states.computeIfAbsent(name, key -> new MemoryLockState());
+            synchronized (state) {
+                if (state.retired) {
+                    continue;
+                }
+                long now = System.nanoTime();
+                if (state.tryAcquire(ownerId, shared, permits, fair, leaseNanos, now)) {
+                    return CompletableFuture.completedFuture(true);
+                }
+                if (deadline - now <= 0) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                CompletableFuture<Boolean> future = new CompletableFuture<>();
+                MemoryLockState.Waiter waiter = state.enqueue(ownerId, shared, permits, leaseNanos, deadline, future);
+                schedule(state, waiter, now);
+                return future;
+            }
+        }
+    }
+
+    ReleaseResult release(String name, long ownerId, boolean shared) {
+        MemoryLockState state = states.get(name);
+        if (state == null) {
+            return ReleaseResult.LEASE_EXPIRED;
+        }
+        synchronized (state) {
+            if (state.retired) {
+                return ReleaseResult.LEASE_EXPIRED;
+            }
+            long now = System.nanoTime();
+            ReleaseResult result = state.release(ownerId, shared, now);
+            complete(state.signal(now));
+            retireIfIdle(name, state, now);
+            return result;
+        }
+    }
+
+    boolean renew(String name, long ownerId, boolean shared, long leaseNanos) {
+        MemoryLockState state = states.get(name);
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            return !state.retired && state.renew(ownerId, shared, leaseNanos, System.nanoTime());
+        }
+    }
+
+    boolean isHeld(String name, long ownerId, boolean shared) {
+        MemoryLockState state = states.get(name);
+        if (state == null) {
+            return false;
+        }
+        synchronized (state) {
+            return !state.retired && state.isHeldBy(ownerId, shared, System.nanoTime());
+        }
+    }
+
+    /**
+     * 异步等待者在等待超时或持有者租期到期时检查一次，仍未获得锁则按新的到期时间继续等待
+     */
+    private void schedule(MemoryLockState state, MemoryLockState.Waiter waiter, long now) {
+        long delay = Math.min(waiter.deadline - now, state.nanosUntilExpiry(now));
+        waiter.timer = LockScheduler.INSTANCE.schedule(() -> onTimer(state, waiter),
+                Math.max(0L, delay), TimeUnit.NANOSECONDS);
+    }
+
+    private void onTimer(MemoryLockState state, MemoryLockState.Waiter waiter) {
+        synchronized (state) {
+            if (waiter.granted) {
+                return;
+            }
+            long now = System.nanoTime();
+            complete(state.signal(now));
+            if (waiter.granted) {
+                return;
+            }
+            if (waiter.deadline - now > 0) {
+                schedule(state, waiter, now);
+                return;
+            }
+            state.cancel(waiter);
+            complete(state.signal(now));
+        }
+        completeAsync(waiter.future, false);
+    }
+
+    /**
+     * 异步等待者的回调会继续执行业务逻辑，提交到公共线程池完成，不在锁状态的监视器和调度线程中执行
+     */
+    private void complete(MemoryLockState.Waiter[] granted) {
+        if (granted == null) {
+            return;
+        }
+        for (MemoryLockState.Waiter waiter : granted) {
+            if (waiter == null) {
+                break;
+            }
+            if (waiter.timer != null) {
+                waiter.timer.cancel(false);
+            }
+            completeAsync(waiter.future, true);
+        }
+    }
+
+    private void completeAsync(CompletableFuture<Boolean> future, boolean acquired) {
+        ForkJoinPool.commonPool().execute(() -> future.complete(acquired));
+    }
+
+    private void retireIfIdle(String name, MemoryLockState state, long now) {
+        if (state.isIdle(now)) {
+            state.retired = true;
+            states.remove(name, state);
+        }
+    }
+
+    /**
+     * 清理租期已到期且无人释放的状态，逐个锁定单个状态，不影响其他锁名称的加锁
+     */
+    private void sweep() {
+        try {
+            long now = System.nanoTime();
+            states.forEach((name, state) -> {
+                synchronized (state) {
+                    if (!state.retired) {
+                        retireIfIdle(name, state, now);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Failed to sweep expired in-memory locks", e);
+        }
+    }
+}
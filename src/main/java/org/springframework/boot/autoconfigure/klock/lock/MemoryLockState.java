@@ -0,0 +1,279 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 单个锁名称在JVM内的状态，所有方法都需在持有本对象监视器时调用。
+ * 互斥持有者和共享持有者（读锁、信号量）分开记录，租期到期在每次访问时惰性清理；
+ * 等待者按到达顺序排队，释放时直接交给队首可获取的等待者
+ *
+ * @author kl
+ */
+final class MemoryLockState {
+
+    /**
+     * 租期为-1时的到期时间，持有到主动释放为止
+     */
+    static final long NEVER = Long.MAX_VALUE;
+
+    private long owner;
+
+    private int holds;
+
+    private long expireAt;
+
+    /**
+     * 共享持有者，按需创建，百万级锁名称时空闲状态只占少量内存
+     */
+    private Map<Long, Hold> readers;
+
+    /**
+     * 共享持有的总次数，信号量按此限制许可数
+     */
+    private int sharedHolds;
+
+    private ArrayDeque<Waiter> waiters;
+
+    /**
+     * 已从锁表中移除，持有旧引用的调用方需重新获取状态
+     */
+    boolean retired;
+
+    /**
+     * 立即尝试加锁，持有者重入不受排队影响，公平模式下有人排队时不插队
+     *
+     * @param permits 共享持有的上限，0表示不限（读锁）
+     */
+    boolean tryAcquire(long ownerId, boolean shared, int permits, boolean fair, long leaseNanos, long now) {
+        expire(now);
+        if (!isReentry(ownerId, shared, permits)) {
+            if (fair && hasWaiters()) {
+                return false;
+            }
+            if (!canAcquire(ownerId, shared, permits)) {
+                return false;
+            }
+        }
+        grant(ownerId, shared, leaseNanos, now);
+        return true;
+    }
+
+    Waiter enqueue(long ownerId, boolean shared, int permits, long leaseNanos, long deadline,
+                   CompletableFuture<Boolean> future) {
+        if (waiters == null) {
+            waiters = new ArrayDeque<>(4);
+        }
+        Waiter waiter = new Waiter(ownerId, shared, permits, leaseNanos, deadline, future);
+        waiters.addLast(waiter);
+        return waiter;
+    }
+
+    void cancel(Waiter waiter) {
+        if (waiters != null) {
+            waiters.remove(waiter);
+        }
+    }
+
+    ReleaseResult release(long ownerId, boolean shared, long now) {
+        expire(now);
+        if (shared) {
+            Hold hold = readers == null ? null : readers.get(ownerId);
+            if (hold == null) {
+                return owner == 0 && !hasReaders() ? ReleaseResult.LEASE_EXPIRED : ReleaseResult.NOT_OWNER;
+            }
+            sharedHolds--;
+            if (--hold.count == 0) {
+                readers.remove(ownerId);
+            }
+        } else {
+            if (owner != ownerId) {
+                return owner == 0 && !hasReaders() ? ReleaseResult.LEASE_EXPIRED : ReleaseResult.NOT_OWNER;
+            }
+            if (--holds == 0) {
+                owner = 0;
+            }
+        }
+        return ReleaseResult.RELEASED;
+    }
+
+    /**
+     * 仍由ownerId持有时按新的租期重新计算到期时间
+     */
+    boolean renew(long ownerId, boolean shared, long leaseNanos, long now) {
+        if (!isHeldBy(ownerId, shared, now)) {
+            return false;
+        }
+        long expireTime = leaseNanos < 0 ? NEVER : now + leaseNanos;
+        if (shared) {
+            readers.get(ownerId).expireAt = expireTime;
+        } else {
+            expireAt = expireTime;
+        }
+        return true;
+    }
+
+    boolean isHeldBy(long ownerId, boolean shared, long now) {
+        expire(now);
+        return shared ? readers != null && readers.containsKey(ownerId) : owner == ownerId;
+    }
+
+    /**
+     * 按到达顺序把锁交给可获取的等待者，遇到仍需等待的等待者即停止，避免写锁被读锁饿死。
+     * 同步等待者由notifyAll唤醒，异步等待者返回给调用方完成future
+     *
+     * @return 需要完成的异步等待者，没有时为null
+     */
+    Waiter[] signal(long now) {
+        if (!hasWaiters()) {
+            return null;
+        }
+        expire(now);
+        Waiter[] granted = null;
+        int asyncCount = 0;
+        boolean notify = false;
+        for (Iterator<Waiter> iterator = waiters.iterator(); iterator.hasNext(); ) {
+            Waiter waiter = iterator.next();
+            if (!isReentry(waiter.ownerId, waiter.shared, waiter.permits)
+                    && !canAcquire(waiter.ownerId, waiter.shared, waiter.permits)) {
+                break;
+            }
+            iterator.remove();
+            grant(waiter.ownerId, waiter.shared, waiter.leaseNanos, now);
+            waiter.granted = true;
+            if (waiter.future == null) {
+                notify = true;
+            } else {
+                if (granted == null) {
+                    granted = new Waiter[waiters.size() + 1];
+                }
+                granted[asyncCount++] = waiter;
+            }
+        }
+        if (notify) {
+            notifyAll();
+        }
+        return granted;
+    }
+
+    /**
+     * 距最近一个持有者租期到期的纳秒数，等待者最多等到此时再检查一次
+     */
+    long nanosUntilExpiry(long now) {
+        long next = owner != 0 ? expireAt : NEVER;
+        if (readers != null) {
+            for (Hold hold : readers.values()) {
+                next = Math.min(next, hold.expireAt);
+            }
+        }
+        return next == NEVER ? Long.MAX_VALUE : Math.max(0L, next - now);
+    }
+
+    boolean isIdle(long now) {
+        expire(now);
+        return owner == 0 && !hasReaders() && !hasWaiters();
+    }
+
+    private void expire(long now) {
+        if (owner != 0 && expireAt - now <= 0) {
+            owner = 0;
+            holds = 0;
+        }
+        if (hasReaders()) {
+            for (Iterator<Hold> iterator = readers.values().iterator(); iterator.hasNext(); ) {
+                Hold hold = iterator.next();
+                if (hold.expireAt - now <= 0) {
+                    sharedHolds -= hold.count;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * 信号量每次获取都占用一个许可，不按持有者重入
+     */
+    private boolean isReentry(long ownerId, boolean shared, int permits) {
+        return owner == ownerId || (shared && permits == 0 && readers != null && readers.containsKey(ownerId));
+    }
+
+    /**
+     * 读锁可与读锁共享，写锁持有者也可再加读锁（锁降级）；信号量另受许可数限制；互斥锁需没有任何持有者
+     */
+    private boolean canAcquire(long ownerId, boolean shared, int permits) {
+        if (shared) {
+            return (owner == 0 || owner == ownerId) && (permits == 0 || sharedHolds < permits);
+        }
+        return owner == 0 && !hasReaders();
+    }
+
+    private void grant(long ownerId, boolean shared, long leaseNanos, long now) {
+        long expireTime = leaseNanos < 0 ? NEVER : now + leaseNanos;
+        if (shared) {
+            if (readers == null) {
+                readers = new HashMap<>(4);
+            }
+            Hold hold = readers.computeIfAbsent(ownerId, id -> new Hold());
+            hold.count++;
+            hold.expireAt = expireTime;
+            sharedHolds++;
+        } else {
+            owner = ownerId;
+            holds++;
+            expireAt = expireTime;
+        }
+    }
+
+    private boolean hasReaders() {
+        return readers != null && !readers.isEmpty();
+    }
+
+    private boolean hasWaiters() {
+        return waiters != null && !waiters.isEmpty();
+    }
+
+    private static final class Hold {
+
+        private int count;
+
+        private long expireAt;
+    }
+
+    static final class Waiter {
+
+        final long ownerId;
+
+        final boolean shared;
+
+        final int permits;
+
+        final long leaseNanos;
+
+        final long deadline;
+
+        /**
+         * 异步等待者的结果，同步等待者为null
+         */
+        final CompletableFuture<Boolean> future;
+
+        boolean granted;
+
+        ScheduledFuture<?> timer;
+
+        Waiter(long ownerId, boolean shared, int permits, long leaseNanos, long deadline,
+               CompletableFuture<Boolean> future) {
+            this.ownerId = ownerId;
+            this.shared = shared;
+            this.permits = permits;
+            this.leaseNanos = leaseNanos;
+            this.deadline = deadline;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多key锁：一次脚本调用原子地获取所有key，任一key被他人持有则全部不获取。
+ * 每个key与Redisson的可重入锁使用相同的hash结构和释放通知频道，可与单key的@Klock互斥；
+ * key已按字典序排序去重，调用方之间不会因加锁顺序不同而死锁。
+ * 集群模式下所有key需位于同一slot，可在锁名称中使用{hashtag}
+ *
+ * @author kl
+ */
+public class MultiKeyLock implements Lock {
+
+    /**
+     * 任一key被他人持有时返回其剩余过期时间，否则对所有key加锁并返回nil
+     */
+    private static final String ACQUIRE_SCRIPT =
+            "for i = 1, #KEYS do " +
+                "if redis.call('exists', KEYS[i]) == 1 and redis.call('hexists', KEYS[i], ARGV[2]) == 0 then " +
+                    "return redis.call('pttl', KEYS[i]); " +
+                "end; " +
+            "end; " +
+            "for i = 1, #KEYS do " +
+                "redis.call('hincrby', KEYS[i], ARGV[2], 1); " +
+                "redis.call('pexpire', KEYS[i], ARGV[1]); " +
+            "end; " +
+            "return nil;";
+
+    /**
+     * 释放当前持有者的所有key，返回1全部释放，0有key已过期，-1有key被他人持有。
+     * ARGV[3 + i]是KEYS[i]的释放通知频道，名称在Java中按Redisson的规则生成
+     */
+    private static final String RELEASE_SCRIPT =
+            "local result = 1; " +
+            "for i = 1, #KEYS do " +
+                "if redis.call('hexists', KEYS[i], ARGV[2]) == 1 then " +
+                    "local counter = redis.call('hincrby', KEYS[i], ARGV[2], -1); " +
+                    "if counter > 0 then " +
+                        "redis.call('pexpire', KEYS[i], ARGV[1]); " +
+                    "else " +
+                        "redis.call('del', KEYS[i]); " +
+                        "redis.call('publish', ARGV[3 + i], ARGV[3]); " +
+                    "end; " +
+                "elseif redis.call('exists', KEYS[i]) == 1 then " +
+                    "result = -1; " +
+                "elseif result == 1 then " +
+                    "result = 0; " +
+                "end; " +
+            "end; " +
+            "return result;";
+
+    /**
+     * 与Redisson一致的锁释放消息
+     */
+    private static final String UNLOCK_MESSAGE = "0";
+
+    private static final long MIN_RETRY_INTERVAL = 10L;
+
+    private static final long MAX_RETRY_INTERVAL = 200L;
+
+    private final RedissonClient redissonClient;
+
+    private final LockInfo lockInfo;
+
+    private final LeaseRenewalScheduler renewalScheduler;
+
+    private final List<Object> keys;
+
+    /**
+     * 释放脚本的参数：租期和持有者之后是释放消息和各key的通知频道
+     */
+    private final Object[] releaseArgs;
+
+    private List<LeaseRenewalScheduler.Lease> leases;
+
+    public MultiKeyLock(RedissonClient redissonClient, LeaseRenewalScheduler renewalScheduler, LockInfo lockInfo) {
+        this.redissonClient = redissonClient;
+        this.renewalScheduler = renewalScheduler;
+        this.lockInfo = lockInfo;
+        this.keys = new ArrayList<>(lockInfo.getLockNames());
+        this.releaseArgs = new Object[keys.size() + 3];
+        releaseArgs[2] = UNLOCK_MESSAGE;
+        for (int i = 0; i < keys.size(); i++) {
+            releaseArgs[i + 3] = LockReleaseNotifications.getChannelName((String) keys.get(i));
+        }
+    }
+
+    @Override
+    public boolean acquire() {
+        return acquire(lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean acquire(long waitTime, TimeUnit unit) {
+        String owner = getOwner(Thread.currentThread().getId());
+        long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        long interval = MIN_RETRY_INTERVAL;
+        while (true) {
+            Number ttl = script().eval(RScript.Mode.READ_WRITE, ACQUIRE_SCRIPT, RScript.ReturnType.INTEGER,
+                    keys, getLeaseTimeMillis(), owner);
+            if (ttl == null) {
+                registerLeases(owner);
+                return true;
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(nextInterval(interval, ttl.longValue(), remaining));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            interval = Math.min(interval << 1, MAX_RETRY_INTERVAL);
+        }
+    }
+
+    @Override
+    public ReleaseResult unlock() {
+        unregisterLeases();
+        Number result = script().eval(RScript.Mode.READ_WRITE, RELEASE_SCRIPT, RScript.ReturnType.INTEGER,
+                keys, releaseArgs(Thread.currentThread().getId()));
+        return toReleaseResult(result);
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId) {
+        return acquireAsync(ownerId, lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId, long waitTime, TimeUnit unit) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        tryAcquireAsync(getOwner(ownerId), System.nanoTime() + unit.toNanos(waitTime), MIN_RETRY_INTERVAL, result);
+        return result;
+    }
+
+    private void tryAcquireAsync(String owner, long deadline, long interval, CompletableFuture<Boolean> result) {
+        script().<Number>evalAsync(RScript.Mode.READ_WRITE, ACQUIRE_SCRIPT, RScript.ReturnType.INTEGER,
+                keys, getLeaseTimeMillis(), owner).whenComplete((ttl, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            if (ttl == null) {
+                registerLeases(owner);
+                result.complete(true);
+                return;
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                result.complete(false);
+                return;
+            }
+            LockScheduler.INSTANCE.schedule(() -> tryAcquireAsync(owner, deadline,
+                    Math.min(interval << 1, MAX_RETRY_INTERVAL), result),
+                    nextInterval(interval, ttl.longValue(), remaining), TimeUnit.MILLISECONDS);
+        });
+    }
+
+    @Override
+    public CompletionStage<ReleaseResult> unlockAsync(long ownerId) {
+        unregisterLeases();
+        return script().<Number>evalAsync(RScript.Mode.READ_WRITE, RELEASE_SCRIPT, RScript.ReturnType.INTEGER,
+                keys, releaseArgs(ownerId))
+                .thenApply(MultiKeyLock::toReleaseResult);
+    }
+
+    private RScript script() {
+        return redissonClient.getScript(StringCodec.INSTANCE);
+    }
+
+    private Object[] releaseArgs(long ownerId) {
+        Object[] args = releaseArgs.clone();
+        args[0] = getLeaseTimeMillis();
+        args[1] = getOwner(ownerId);
+        return args;
+    }
+
+    /**
+     * 与Redisson可重入锁一致的持有者标识
+     */
+    private String getOwner(long threadId) {
+        return redissonClient.getId() + ":" + threadId;
+    }
+
+    /**
+     * 未指定租期时使用续期调度的租期，加锁后登记到续期调度
+     */
+    private long getLeaseTimeMillis() {
+        long leaseTime = lockInfo.getLeaseTime();
+        return leaseTime < 0 ? renewalScheduler.getLeaseTime() : TimeUnit.SECONDS.toMillis(leaseTime);
+    }
+
+    private synchronized void registerLeases(String owner) {
+        if (lockInfo.getLeaseTime() >= 0 || leases != null) {
+            return;
+        }
+        List<LeaseRenewalScheduler.Lease> registered = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            registered.add(renewalScheduler.register((String) key, owner));
+        }
+        leases = registered;
+    }
+
+    private synchronized void unregisterLeases() {
+        if (leases != null) {
+            for (LeaseRenewalScheduler.Lease lease : leases) {
+                renewalScheduler.unregister(lease);
+            }
+            leases = null;
+        }
+    }
+
+    /**
+     * 下次重试的间隔，不超过阻塞key的剩余过期时间和剩余等待时间
+     */
+    private static long nextInterval(long interval, long ttl, long remaining) {
+        long next = ttl > 0 ? Math.min(interval, ttl) : interval;
+        return Math.max(1L, Math.min(next, remaining));
+    }
+
+    private static ReleaseResult toReleaseResult(Number result) {
+        if (result == null || result.intValue() == 1) {
+            return ReleaseResult.RELEASED;
+        }
+        return result.intValue() < 0 ? ReleaseResult.NOT_OWNER : ReleaseResult.LEASE_EXPIRED;
+    }
+}
@@ -0,0 +1,113 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 开启读锁共享时的写锁：获取期间登记为本节点的等待写者，新的本地读者不再加入共享，
+ * 已有的读者离开后共享的读锁随之释放，写者不会被源源不断的本地读者饿死。
+ * 获得写锁后在共享状态中记录持有者，供同一持有者的锁降级识别
+ *
+ * @author kl
+ */
+public class PriorityWriteLock implements Lock {
+
+    private final Lock delegate;
+
+    private final ReadLockShares shares;
+
+    private final String lockName;
+
+    PriorityWriteLock(Lock delegate, ReadLockShares shares, String lockName) {
+        this.delegate = delegate;
+        this.shares = shares;
+        this.lockName = lockName;
+    }
+
+    @Override
+    public boolean acquire() {
+        shares.writerPending(lockName);
+        try {
+            return acquired(Thread.currentThread().getId(), delegate.acquire());
+        } finally {
+            shares.writerDone(lockName);
+        }
+    }
+
+    @Override
+    public boolean acquire(long waitTime, TimeUnit unit) {
+        shares.writerPending(lockName);
+        try {
+            return acquired(Thread.currentThread().getId(), delegate.acquire(waitTime, unit));
+        } finally {
+            shares.writerDone(lockName);
+        }
+    }
+
+    /**
+     * 不等待的加锁不会阻挡读者，无需登记为等待写者
+     */
+    @Override
+    public boolean tryAcquire() {
+        return acquired(Thread.currentThread().getId(), delegate.tryAcquire());
+    }
+
+    @Override
+    public ReleaseResult unlock() {
+        shares.writerReleased(lockName, Thread.currentThread().getId());
+        return delegate.unlock();
+    }
+
+    @Override
+    public long getFencingToken() {
+        return delegate.getFencingToken();
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId) {
+        shares.writerPending(lockName);
+        return delegate.acquireAsync(ownerId).whenComplete((acquired, error) -> {
+            acquired(ownerId, error == null && acquired);
+            shares.writerDone(lockName);
+        });
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId, long waitTime, TimeUnit unit) {
+        shares.writerPending(lockName);
+        return delegate.acquireAsync(ownerId, waitTime, unit).whenComplete((acquired, error) -> {
+            acquired(ownerId, error == null && acquired);
+            shares.writerDone(lockName);
+        });
+    }
+
+    @Override
+    public CompletionStage<ReleaseResult> unlockAsync(long ownerId) {
+        shares.writerReleased(lockName, ownerId);
+        return delegate.unlockAsync(ownerId);
+    }
+
+    @Override
+    public boolean isRenewable() {
+        return delegate.isRenewable();
+    }
+
+    @Override
+    public CompletionStage<Boolean> renewAsync(long ownerId) {
+        return delegate.renewAsync(ownerId);
+    }
+
+    @Override
+    public CompletionStage<Boolean> isHeldAsync(long ownerId) {
+        return delegate.isHeldAsync(ownerId);
+    }
+
+    private boolean acquired(long ownerId, boolean acquired) {
+        if (acquired) {
+            shares.writerAcquired(lockName, ownerId);
+        }
+        return acquired;
+    }
+}
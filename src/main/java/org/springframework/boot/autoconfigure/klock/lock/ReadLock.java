@@ -1,50 +1,31 @@
 package org.springframework.boot.autoconfigure.klock.lock;
 
-import org.redisson.api.RReadWriteLock;
+import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.boot.autoconfigure.klock.model.LockInfo;
 
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-
 /**
  * Created by kl on 2017/12/29.
  */
-public class ReadLock implements Lock {
-
-    private  RReadWriteLock rLock;
+public class ReadLock extends AbstractRedissonLock {
 
-    private final LockInfo lockInfo;
+    private final RedissonClient redissonClient;
 
-    private RedissonClient redissonClient;
-
-    public ReadLock(RedissonClient redissonClient,LockInfo info) {
+    public ReadLock(RedissonClient redissonClient,LockInfo lockInfo) {
+        super(lockInfo);
         this.redissonClient = redissonClient;
-        this.lockInfo = info;
     }
 
     @Override
-    public boolean acquire() {
-        try {
-            rLock=redissonClient.getReadWriteLock(lockInfo.getLockName());
-            return rLock.readLock().tryLock(lockInfo.getWaitTime(), lockInfo.getLeaseTime(), TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            return false;
-        }
+    protected RLock createRLock() {
+        return redissonClient.getReadWriteLock(lockInfo.getLockName()).readLock();
     }
 
+    /**
+     * 读锁的每个持有者还有单独的超时key，续期需要Redisson读锁自己的脚本，仍使用看门狗
+     */
     @Override
-    public boolean release() {
-        if(rLock.readLock().isHeldByCurrentThread()){
-            try {
-                return rLock.readLock().forceUnlockAsync().get();
-            } catch (InterruptedException e) {
-                return false;
-            } catch (ExecutionException e) {
-                return false;
-            }
-        }
-
-        return false;
+    protected String getLeaseFieldSuffix() {
+        return null;
     }
 }
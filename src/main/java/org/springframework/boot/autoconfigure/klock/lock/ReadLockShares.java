@@ -0,0 +1,348 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import org.redisson.api.RLock;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 本节点读锁的共享状态：同一锁名称的本地读者共用一次Redis读锁获取，只在本地计数，
+ * 最后一个本地读者离开时才释放Redis读锁。共享的读锁由Redisson看门狗续期，节点宕机后一个看门狗周期内过期。
+ * 本节点有写者正在获取同名写锁时，新的读者不再加入共享，等写者得到结果后再继续，避免写者被本地读者饿死；
+ * 已在共享中的持有者重入时不受此限制，否则会与等待它释放读锁的写者互相等待。
+ * 本地写锁的持有者另行记录，持有写锁时获取读锁（锁降级）不经过共享，见{@link SharedReadLock}。
+ * 每个锁名称一个监视器，Redis调用都在监视器之外发起
+ *
+ * @author kl
+ */
+final class ReadLockShares {
+
+    /**
+     * 共享获取使用的持有者标识，与线程id和异步持有者标识都不重叠
+     */
+    private static final AtomicLong OWNER_SEQUENCE = new AtomicLong(Long.MIN_VALUE);
+
+    private final ConcurrentHashMap<String, Share> shares = new ConcurrentHashMap<>(256);
+
+    private final Function<String, RLock> readLocks;
+
+    /**
+     * @param readLocks 按锁名称获取Redisson读锁
+     */
+    ReadLockShares(Function<String, RLock> readLocks) {
+        this.readLocks = readLocks;
+    }
+
+    /**
+     * 加入本地共享，没有共享的读锁时发起一次获取，获取过程中到达的读者等待同一次获取的结果
+     *
+     * @param owner 本地读者的持有者标识，同步加锁为线程id
+     * @return 是否在等待时间内成为读者
+     */
+    CompletableFuture<Boolean> acquire(String name, long owner, long waitNanos) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        attempt(name, owner, System.nanoTime() + waitNanos, result);
+        return result;
+    }
+
+    /**
+     * 离开本地共享，最后一个读者离开时释放Redis读锁
+     */
+    CompletionStage<ReleaseResult> release(String name, long owner) {
+        Share share = shares.get(name);
+        if (share == null) {
+            return CompletableFuture.completedFuture(ReleaseResult.LEASE_EXPIRED);
+        }
+        long ownerId;
+        synchronized (share) {
+            if (share.retired || share.readers == 0) {
+                return CompletableFuture.completedFuture(ReleaseResult.LEASE_EXPIRED);
+            }
+            share.readerOwners.computeIfPresent(owner, (key, count) -> count > 1 ? count - 1 : null);
+            if (--share.readers > 0) {
+                return CompletableFuture.completedFuture(ReleaseResult.RELEASED);
+            }
+            share.held = false;
+            ownerId = share.ownerId;
+            retireIfIdle(name, share);
+        }
+        RLock lock = share.lock;
+        return lock.unlockAsync(ownerId).handle((result, error) -> error).thenCompose(error -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(ReleaseResult.RELEASED);
+            }
+            Throwable cause = unwrap(error);
+            if (!(cause instanceof IllegalMonitorStateException)) {
+                CompletableFuture<ReleaseResult> failed = new CompletableFuture<>();
+                failed.completeExceptionally(cause);
+                return failed;
+            }
+            return lock.isLockedAsync().thenApply(locked -> locked ? ReleaseResult.NOT_OWNER : ReleaseResult.LEASE_EXPIRED);
+        });
+    }
+
+    boolean isHeld(String name) {
+        Share share = shares.get(name);
+        if (share == null) {
+            return false;
+        }
+        synchronized (share) {
+            return !share.retired && share.held && share.readers > 0;
+        }
+    }
+
+    /**
+     * owner是否持有本节点记录的同名写锁
+     */
+    boolean isWriteHeldBy(String name, long owner) {
+        Share share = shares.get(name);
+        if (share == null) {
+            return false;
+        }
+        synchronized (share) {
+            return !share.retired && share.writeOwners.containsKey(owner);
+        }
+    }
+
+    /**
+     * 记录一次写锁获取，重入时增加计数
+     */
+    void writerAcquired(String name, long owner) {
+        for (;;) {
+            Share share = shares.computeIfAbsent(name, key -> new Share(readLocks.apply(key)));
+            synchronized (share) {
+                if (!share.retired) {
+                    share.writeOwners.merge(owner, 1, Integer::sum);
+                    return;
+                }
+            }
+        }
+    }
+
+    void writerReleased(String name, long owner) {
+        Share share = shares.get(name);
+        if (share == null) {
+            return;
+        }
+        synchronized (share) {
+            if (!share.retired) {
+                share.writeOwners.computeIfPresent(owner, (key, count) -> count > 1 ? count - 1 : null);
+                retireIfIdle(name, share);
+            }
+        }
+    }
+
+    /**
+     * 本节点的写者开始获取写锁，此后到达的读者等待
+     */
+    void writerPending(String name) {
+        for (;;) {
+            Share share = shares.computeIfAbsent(name, key -> new Share(readLocks.apply(key)));
+            synchronized (share) {
+                if (!share.retired) {
+                    share.pendingWriters++;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 写者已得到获取结果，放行等待的读者
+     */
+    void writerDone(String name) {
+        Share share = shares.get(name);
+        if (share == null) {
+            return;
+        }
+        List<BlockedReader> released;
+        synchronized (share) {
+            if (share.retired || --share.pendingWriters > 0) {
+                return;
+            }
+            released = share.blocked;
+            share.blocked = new ArrayList<>(2);
+            retireIfIdle(name, share);
+        }
+        for (BlockedReader reader : released) {
+            reader.timer.cancel(false);
+            ForkJoinPool.commonPool().execute(() -> attempt(name, reader.owner, reader.deadline, reader.result));
+        }
+    }
+
+    private void attempt(String name, long owner, long deadline, CompletableFuture<Boolean> result) {
+        for (;;) {
+            Share share = shares.computeIfAbsent(name, key -> new Share(readLocks.apply(key)));
+            CompletableFuture<Boolean> acquiring;
+            long startWaitNanos = -1L;
+            synchronized (share) {
+                if (share.retired) {
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                //已经是读者的持有者重入时不能等待写者，写者正等待它释放
+                if (share.pendingWriters > 0 && !share.readerOwners.containsKey(owner)) {
+                    if (remaining <= 0) {
+                        retireIfIdle(name, share);
+                        result.complete(false);
+                    } else {
+                        block(share, owner, deadline, remaining, result);
+                    }
+                    return;
+                }
+                if (share.held) {
+                    share.readers++;
+                    share.readerOwners.merge(owner, 1, Integer::sum);
+                    result.complete(true);
+                    return;
+                }
+                if (share.acquiring == null) {
+                    share.acquiring = new CompletableFuture<>();
+                    startWaitNanos = Math.max(remaining, 0L);
+                }
+                share.joining.add(owner);
+                acquiring = share.acquiring;
+            }
+            if (startWaitNanos >= 0) {
+                start(name, share, acquiring, startWaitNanos);
+            }
+            acquiring.whenComplete((acquired, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(unwrap(error));
+                } else if (acquired) {
+                    result.complete(true);
+                } else if (deadline - System.nanoTime() > 0) {
+                    attempt(name, owner, deadline, result);
+                } else {
+                    result.complete(false);
+                }
+            });
+            return;
+        }
+    }
+
+    /**
+     * 发起一次共享获取，结果在更新共享状态之后才通知等待的读者，获取成功时等待的读者全部计为读者。
+     * 通知读者会执行调用方的后续逻辑，交给公共线程池，不在Redisson的I/O线程中执行
+     */
+    private void start(String name, Share share, CompletableFuture<Boolean> acquiring, long waitNanos) {
+        long ownerId = OWNER_SEQUENCE.incrementAndGet();
+        share.lock.tryLockAsync(TimeUnit.NANOSECONDS.toMillis(waitNanos), -1L, TimeUnit.MILLISECONDS, ownerId)
+                .whenCompleteAsync((acquired, error) -> {
+                    boolean success = error == null && acquired;
+                    synchronized (share) {
+                        share.acquiring = null;
+                        if (success) {
+                            share.held = true;
+                            share.ownerId = ownerId;
+                            share.readers += share.joining.size();
+                            for (Long joined : share.joining) {
+                                share.readerOwners.merge(joined, 1, Integer::sum);
+                            }
+                        }
+                        share.joining = new ArrayList<>(2);
+                        retireIfIdle(name, share);
+                    }
+                    if (error != null) {
+                        acquiring.completeExceptionally(error);
+                    } else {
+                        acquiring.complete(success);
+                    }
+                }, ForkJoinPool.commonPool());
+    }
+
+    private void block(Share share, long owner, long deadline, long remaining, CompletableFuture<Boolean> result) {
+        BlockedReader reader = new BlockedReader(owner, deadline, result);
+        share.blocked.add(reader);
+        reader.timer = LockScheduler.INSTANCE.schedule(() -> {
+            synchronized (share) {
+                if (!share.blocked.remove(reader)) {
+                    return;
+                }
+            }
+            ForkJoinPool.commonPool().execute(() -> result.complete(false));
+        }, remaining, TimeUnit.NANOSECONDS);
+    }
+
+    private void retireIfIdle(String name, Share share) {
+        if (share.readers == 0 && !share.held && share.acquiring == null && share.joining.isEmpty()
+                && share.pendingWriters == 0 && share.blocked.isEmpty() && share.writeOwners.isEmpty()) {
+            share.retired = true;
+            shares.remove(name, share);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * 单个锁名称的共享状态，字段都在持有本对象监视器时访问
+     */
+    private static final class Share {
+
+        private final RLock lock;
+
+        private int readers;
+
+        private boolean held;
+
+        private long ownerId;
+
+        private CompletableFuture<Boolean> acquiring;
+
+        /**
+         * 各本地读者持有者的重入次数
+         */
+        private final Map<Long, Integer> readerOwners = new HashMap<>(4);
+
+        /**
+         * 等待进行中的获取结果的读者
+         */
+        private List<Long> joining = new ArrayList<>(2);
+
+        private int pendingWriters;
+
+        /**
+         * 本节点持有同名写锁的持有者及其重入次数
+         */
+        private final Map<Long, Integer> writeOwners = new HashMap<>(2);
+
+        private List<BlockedReader> blocked = new ArrayList<>(2);
+
+        private boolean retired;
+
+        Share(RLock lock) {
+            this.lock = lock;
+        }
+    }
+
+    private static final class BlockedReader {
+
+        private final long owner;
+
+        private final long deadline;
+
+        private final CompletableFuture<Boolean> result;
+
+        private ScheduledFuture<?> timer;
+
+        BlockedReader(long owner, long deadline, CompletableFuture<Boolean> result) {
+            this.owner = owner;
+            this.deadline = deadline;
+            this.result = result;
+        }
+    }
+}
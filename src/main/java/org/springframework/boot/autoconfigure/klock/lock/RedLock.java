@@ -0,0 +1,237 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import org.redisson.api.RFuture;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RedLock：在多个相互独立的Redis主节点上并行加锁，在锁的有效期扣除耗时和时钟漂移后仍有剩余，
+ * 且多数节点加锁成功时才算获得锁，否则释放已获得的节点并随机等待后重试。
+ * 各节点并行请求，单次尝试的耗时取决于第quorum快的节点而不是所有节点之和
+ *
+ * @author kl
+ */
+public class RedLock implements Lock {
+
+    /**
+     * 时钟漂移的固定补偿，单位毫秒
+     */
+    private static final long CLOCK_DRIFT_MILLIS = 2L;
+
+    private static final long MIN_RETRY_DELAY = 10L;
+
+    private static final long MAX_RETRY_DELAY = 100L;
+
+    private final RedLockNodes nodes;
+
+    private final LockInfo lockInfo;
+
+    private RLock[] locks;
+
+    public RedLock(RedLockNodes nodes, LockInfo lockInfo) {
+        this.nodes = nodes;
+        this.lockInfo = lockInfo;
+    }
+
+    @Override
+    public boolean acquire() {
+        return acquire(lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean acquire(long waitTime, TimeUnit unit) {
+        long ownerId = Thread.currentThread().getId();
+        long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        try {
+            while (true) {
+                if (acquireOnce(ownerId).get()) {
+                    return true;
+                }
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.MILLISECONDS.sleep(Math.min(nextRetryDelay(), remaining));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Fail to acquire RedLock(" + lockInfo.getLockName() + ")", e.getCause());
+        }
+    }
+
+    @Override
+    public ReleaseResult unlock() {
+        return unlockAsync(Thread.currentThread().getId()).toCompletableFuture().join();
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId) {
+        return acquireAsync(ownerId, lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId, long waitTime, TimeUnit unit) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        acquireAsync(ownerId, System.nanoTime() + unit.toNanos(waitTime), result);
+        return result;
+    }
+
+    private void acquireAsync(long ownerId, long deadline, CompletableFuture<Boolean> result) {
+        acquireOnce(ownerId).whenComplete((acquired, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (acquired || remaining <= 0) {
+                result.complete(acquired);
+                return;
+            }
+            LockScheduler.INSTANCE.schedule(() -> acquireAsync(ownerId, deadline, result),
+                    Math.min(nextRetryDelay(), remaining), TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * 释放所有节点上的锁，多数节点释放成功即视为释放成功
+     */
+    @Override
+    public CompletionStage<ReleaseResult> unlockAsync(long ownerId) {
+        RLock[] locks = getLocks();
+        AtomicInteger released = new AtomicInteger();
+        CompletableFuture<?>[] unlocks = new CompletableFuture<?>[locks.length];
+        for (int i = 0; i < locks.length; i++) {
+            unlocks[i] = locks[i].unlockAsync(ownerId).toCompletableFuture().handle((result, error) -> {
+                if (error == null) {
+                    released.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        return CompletableFuture.allOf(unlocks).thenApply(ignored ->
+                released.get() >= nodes.getQuorum() ? ReleaseResult.RELEASED : ReleaseResult.LEASE_EXPIRED);
+    }
+
+    /**
+     * 在所有节点上并行尝试一次加锁，多数节点成功且锁仍在有效期内时返回true，
+     * 否则释放本次已获得的节点，包括超过响应时间后才加锁成功的节点。
+     * 释放不等待各节点响应，结果确定后立即返回，重试的等待不受慢节点影响
+     */
+    private CompletableFuture<Boolean> acquireOnce(long ownerId) {
+        RLock[] locks = getLocks();
+        long leaseTime = getLeaseTimeMillis();
+        long start = System.nanoTime();
+        Quorum quorum = new Quorum(locks.length, nodes.getQuorum());
+        @SuppressWarnings("unchecked")
+        RFuture<Boolean>[] attempts = new RFuture[locks.length];
+        for (int i = 0; i < locks.length; i++) {
+            attempts[i] = locks[i].tryLockAsync(0, leaseTime, TimeUnit.MILLISECONDS, ownerId);
+            attempts[i].whenComplete((acquired, error) -> quorum.onResponse(error == null && acquired));
+        }
+        ScheduledFuture<?> timeout = LockScheduler.INSTANCE.schedule(() -> quorum.result.complete(false),
+                nodes.getResponseTimeout(), TimeUnit.MILLISECONDS);
+
+        return quorum.result.thenApply(reached -> {
+            timeout.cancel(false);
+            long validity = getValidityMillis(leaseTime)
+                    - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (reached && validity > 0) {
+                return true;
+            }
+            releaseAttempts(attempts, ownerId);
+            return false;
+        });
+    }
+
+    /**
+     * 各节点的加锁请求返回成功后发送释放，不等待释放结果
+     */
+    private void releaseAttempts(RFuture<Boolean>[] attempts, long ownerId) {
+        RLock[] locks = getLocks();
+        for (int i = 0; i < attempts.length; i++) {
+            RLock lock = locks[i];
+            attempts[i].whenComplete((acquired, error) -> {
+                if (error == null && acquired) {
+                    lock.unlockAsync(ownerId);
+                }
+            });
+        }
+    }
+
+    private RLock[] getLocks() {
+        if (locks == null) {
+            List<RedissonClient> clients = nodes.getClients();
+            RLock[] created = new RLock[clients.size()];
+            for (int i = 0; i < created.length; i++) {
+                created[i] = clients.get(i).getLock(lockInfo.getLockName());
+            }
+            locks = created;
+        }
+        return locks;
+    }
+
+    /**
+     * 租期换算为毫秒，-1表示由各节点的看门狗自动续期
+     */
+    private long getLeaseTimeMillis() {
+        long leaseTime = lockInfo.getLeaseTime();
+        return leaseTime < 0 ? leaseTime : TimeUnit.SECONDS.toMillis(leaseTime);
+    }
+
+    /**
+     * 扣除时钟漂移后锁的有效期，看门狗模式下以看门狗超时时间计算
+     */
+    private long getValidityMillis(long leaseTime) {
+        long validity = leaseTime < 0
+                ? nodes.getClients().get(0).getConfig().getLockWatchdogTimeout() : leaseTime;
+        return validity - (long) (validity * nodes.getClockDriftFactor()) - CLOCK_DRIFT_MILLIS;
+    }
+
+    private static long nextRetryDelay() {
+        return ThreadLocalRandom.current().nextLong(MIN_RETRY_DELAY, MAX_RETRY_DELAY + 1);
+    }
+
+    /**
+     * 统计各节点的加锁结果，达到多数时立即完成，成功数已不可能达到多数时提前失败
+     */
+    private static class Quorum {
+
+        private final int total;
+
+        private final int quorum;
+
+        private final AtomicInteger acquired = new AtomicInteger();
+
+        private final AtomicInteger failed = new AtomicInteger();
+
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        Quorum(int total, int quorum) {
+            this.total = total;
+            this.quorum = quorum;
+        }
+
+        void onResponse(boolean success) {
+            if (success) {
+                if (acquired.incrementAndGet() >= quorum) {
+                    result.complete(true);
+                }
+            } else if (failed.incrementAndGet() > total - quorum) {
+                result.complete(false);
+            }
+        }
+    }
+}
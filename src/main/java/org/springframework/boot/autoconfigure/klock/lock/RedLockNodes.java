@@ -0,0 +1,50 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import org.redisson.api.RedissonClient;
+
+import java.util.List;
+
+/**
+ * RedLock使用的多个相互独立的Redis主节点
+ *
+ * @author kl
+ */
+public class RedLockNodes {
+
+    private final List<RedissonClient> clients;
+
+    private final double clockDriftFactor;
+
+    private final long responseTimeout;
+
+    public RedLockNodes(List<RedissonClient> clients, double clockDriftFactor, long responseTimeout) {
+        this.clients = clients;
+        this.clockDriftFactor = clockDriftFactor;
+        this.responseTimeout = responseTimeout;
+    }
+
+    public List<RedissonClient> getClients() {
+        return clients;
+    }
+
+    public double getClockDriftFactor() {
+        return clockDriftFactor;
+    }
+
+    public long getResponseTimeout() {
+        return responseTimeout;
+    }
+
+    /**
+     * 获得锁需要的最少节点数
+     */
+    public int getQuorum() {
+        return clients.size() / 2 + 1;
+    }
+
+    public void shutdown() {
+        for (RedissonClient client : clients) {
+            client.shutdown();
+        }
+    }
+}
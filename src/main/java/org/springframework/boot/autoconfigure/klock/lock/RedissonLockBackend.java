@@ -0,0 +1,189 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.redisson.api.RLock;
+import org.redisson.api.RPermitExpirableSemaphore;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.klock.config.KlockConfig;
+import org.springframework.boot.autoconfigure.klock.metrics.KlockMetrics;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.LockType;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Redisson的锁实现。
+ * 热点锁名称的Redisson锁对象按(名称,类型)缓存复用，缓存有数量上限并按访问过期，
+ * 业务key再多内存也是有界的
+ *
+ * @author kl
+ */
+public class RedissonLockBackend implements LockBackend {
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private KlockConfig klockConfig;
+
+    @Autowired(required = false)
+    private RedLockNodes redLockNodes;
+
+    @Autowired(required = false)
+    private KlockMetrics klockMetrics = KlockMetrics.NONE;
+
+    private LocalLocks localLocks;
+
+    private LeaseRenewalScheduler renewalScheduler;
+
+    private LockReleaseNotifications releaseNotifications;
+
+    private Cache<LockKey, RLock> rLockCache;
+
+    private Cache<String, RPermitExpirableSemaphore> semaphoreCache;
+
+    private ReadLockShares readLockShares;
+
+    @PostConstruct
+    public void init() {
+        if (klockConfig.getLocalLock().isEnabled()) {
+            localLocks = new LocalLocks();
+        }
+        KlockConfig.LockCache lockCache = klockConfig.getLockCache();
+        rLockCache = Caffeine.newBuilder()
+                .maximumSize(lockCache.getMaxSize())
+                .expireAfterAccess(lockCache.getExpireAfterAccess(), TimeUnit.SECONDS)
+                .build();
+        semaphoreCache = Caffeine.newBuilder()
+                .maximumSize(lockCache.getMaxSize())
+                .expireAfterAccess(lockCache.getExpireAfterAccess(), TimeUnit.SECONDS)
+                .build();
+        renewalScheduler = new LeaseRenewalScheduler(redissonClient, klockMetrics);
+        releaseNotifications = new LockReleaseNotifications(redissonClient);
+        if (klockConfig.getReadLockSharing().isEnabled()) {
+            readLockShares = new ReadLockShares(name -> rLockCache.get(new LockKey(name, LockType.Read, -1L),
+                    key -> redissonClient.getReadWriteLock(name).readLock()));
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        renewalScheduler.shutdown();
+    }
+
+    @Override
+    public Lock getLock(LockInfo lockInfo){
+        if (lockInfo.getLockNames() != null) {
+            return new MultiKeyLock(redissonClient, renewalScheduler, lockInfo);
+        }
+        if (lockInfo.isFenced()) {
+            if (lockInfo.getType() != LockType.Reentrant) {
+                throw new IllegalArgumentException("Fencing token is only supported by "
+                        + LockType.Reentrant + " lock, but got " + lockInfo.getType());
+            }
+            return localFirst(cached(new FencedLock(redissonClient, releaseNotifications, lockInfo)), lockInfo);
+        }
+        switch (lockInfo.getType()) {
+            case Reentrant:
+                return localFirst(cached(new ReentrantLock(redissonClient, lockInfo)), lockInfo);
+            case Fair:
+                return cached(new FairLock(redissonClient, lockInfo));
+            case Read:
+                if (readLockShares != null) {
+                    return new SharedReadLock(readLockShares, cached(new ReadLock(redissonClient, lockInfo)), lockInfo);
+                }
+                return cached(new ReadLock(redissonClient, lockInfo));
+            case Write:
+                return writerFirst(localFirst(cached(new WriteLock(redissonClient, lockInfo)), lockInfo), lockInfo);
+            case Semaphore:
+                return cached(new SemaphoreLock(redissonClient, lockInfo));
+            case RedLock:
+                if (redLockNodes == null) {
+                    throw new IllegalStateException("RedLock requires " + KlockConfig.PREFIX
+                            + ".red-lock.node-addresses to be configured");
+                }
+                return localFirst(new RedLock(redLockNodes, lockInfo), lockInfo);
+            default:
+                return localFirst(cached(new ReentrantLock(redissonClient, lockInfo)), lockInfo);
+        }
+    }
+
+    /**
+     * 包装对象只持有本次调用的等待和租期参数，底层的RLock从缓存中获取，
+     * 未指定租期的锁由统一的续期调度批量续期。
+     * RLock每次加锁都会改写内部的租期，重入释放和看门狗会读取它，所以缓存按租期区分，只在租期相同的调用间共享
+     */
+    private Lock cached(AbstractRedissonLock lock) {
+        LockInfo lockInfo = lock.lockInfo;
+        LockKey lockKey = new LockKey(lockInfo.getLockName(), lockInfo.getType(), lockInfo.getLeaseTime());
+        lock.bindRLock(rLockCache.get(lockKey, key -> lock.createRLock()));
+        lock.bindRenewalScheduler(renewalScheduler);
+        return lock;
+    }
+
+    /**
+     * 信号量按名称缓存，许可总数只在首次创建时设置，之后获取和释放许可各只有一次往返
+     */
+    private Lock cached(SemaphoreLock lock) {
+        lock.bindSemaphore(semaphoreCache.get(lock.getLockName(), key -> lock.createSemaphore()));
+        lock.bindRenewalScheduler(renewalScheduler);
+        return lock;
+    }
+
+    /**
+     * 开启本地锁时，互斥锁先在JVM内排队，读锁共享、公平锁需要跨节点排队，均不经过本地锁
+     */
+    private Lock localFirst(Lock lock, LockInfo lockInfo) {
+        if (localLocks == null) {
+            return lock;
+        }
+        return new LocalFirstLock(lock, localLocks.get(lockInfo.getLockName()), lockInfo);
+    }
+
+    /**
+     * 开启读锁共享时，写锁获取期间阻止本地读者加入共享
+     */
+    private Lock writerFirst(Lock lock, LockInfo lockInfo) {
+        if (readLockShares == null) {
+            return lock;
+        }
+        return new PriorityWriteLock(lock, readLockShares, lockInfo.getLockName());
+    }
+
+    private static final class LockKey {
+
+        private final String name;
+
+        private final LockType type;
+
+        private final long leaseTime;
+
+        LockKey(String name, LockType type, long leaseTime) {
+            this.name = name;
+            this.type = type;
+            this.leaseTime = leaseTime;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof LockKey)) {
+                return false;
+            }
+            LockKey that = (LockKey) other;
+            return type == that.type && leaseTime == that.leaseTime && name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return (name.hashCode() * 31 + type.hashCode()) * 31 + Long.hashCode(leaseTime);
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import org.redisson.api.RPermitExpirableSemaphore;
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 信号量锁，同一锁名称最多permits个持有者。每个许可带租期，节点宕机后许可到期自动归还；
+ * 获取和释放许可各是一次脚本调用，许可总数在本节点首次使用该名称时设置。
+ * 租期为-1时许可按看门狗超时时间获取，登记到统一的续期调度批量续期
+ *
+ * @author kl
+ */
+public class SemaphoreLock implements Lock {
+
+    private final RedissonClient redissonClient;
+
+    private final LockInfo lockInfo;
+
+    private RPermitExpirableSemaphore semaphore;
+
+    private volatile String permitId;
+
+    private LeaseRenewalScheduler renewalScheduler;
+
+    private volatile LeaseRenewalScheduler.Permit renewal;
+
+    public SemaphoreLock(RedissonClient redissonClient, LockInfo lockInfo) {
+        this.redissonClient = redissonClient;
+        this.lockInfo = lockInfo;
+    }
+
+    String getLockName() {
+        return lockInfo.getLockName();
+    }
+
+    /**
+     * 创建锁名称对应的信号量并设置许可总数，已存在的信号量不会被修改
+     */
+    RPermitExpirableSemaphore createSemaphore() {
+        RPermitExpirableSemaphore created = redissonClient.getPermitExpirableSemaphore(lockInfo.getLockName());
+        created.trySetPermits(lockInfo.getPermits());
+        return created;
+    }
+
+    /**
+     * 使用RedissonLockBackend缓存的信号量，许可总数只在创建时设置一次
+     */
+    void bindSemaphore(RPermitExpirableSemaphore semaphore) {
+        this.semaphore = semaphore;
+    }
+
+    void bindRenewalScheduler(LeaseRenewalScheduler renewalScheduler) {
+        this.renewalScheduler = renewalScheduler;
+    }
+
+    private RPermitExpirableSemaphore getSemaphore() {
+        if (semaphore == null) {
+            semaphore = createSemaphore();
+        }
+        return semaphore;
+    }
+
+    @Override
+    public boolean acquire() {
+        return acquire(lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean acquire(long waitTime, TimeUnit unit) {
+        try {
+            return onAcquired(getSemaphore().tryAcquire(unit.toMillis(waitTime), getLeaseTimeMillis(),
+                    TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 许可不属于线程，释放时只按获取时的许可id归还
+     */
+    @Override
+    public ReleaseResult unlock() {
+        String current = takePermit();
+        if (current == null) {
+            return ReleaseResult.NOT_OWNER;
+        }
+        return getSemaphore().tryRelease(current) ? ReleaseResult.RELEASED : ReleaseResult.LEASE_EXPIRED;
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId) {
+        return acquireAsync(ownerId, lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId, long waitTime, TimeUnit unit) {
+        return getSemaphore().tryAcquireAsync(unit.toMillis(waitTime), getLeaseTimeMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(this::onAcquired);
+    }
+
+    @Override
+    public CompletionStage<ReleaseResult> unlockAsync(long ownerId) {
+        String current = takePermit();
+        if (current == null) {
+            return CompletableFuture.completedFuture(ReleaseResult.NOT_OWNER);
+        }
+        return getSemaphore().tryReleaseAsync(current)
+                .thenApply(released -> released ? ReleaseResult.RELEASED : ReleaseResult.LEASE_EXPIRED);
+    }
+
+    /**
+     * 许可按获取时的许可id续期，与ownerId无关
+     */
+    @Override
+    public CompletionStage<Boolean> renewAsync(long ownerId) {
+        String current = permitId;
+        if (current == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return getSemaphore().updateLeaseTimeAsync(current, getLeaseTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private boolean onAcquired(String acquiredPermitId) {
+        if (acquiredPermitId == null) {
+            return false;
+        }
+        permitId = acquiredPermitId;
+        if (lockInfo.getLeaseTime() < 0 && renewalScheduler != null) {
+            renewal = renewalScheduler.registerPermit(getSemaphore(), acquiredPermitId);
+        }
+        return true;
+    }
+
+    private String takePermit() {
+        LeaseRenewalScheduler.Permit currentRenewal = renewal;
+        if (currentRenewal != null) {
+            renewalScheduler.unregisterPermit(currentRenewal);
+            renewal = null;
+        }
+        String current = permitId;
+        permitId = null;
+        return current;
+    }
+
+    private long getLeaseTimeMillis() {
+        long leaseTime = lockInfo.getLeaseTime();
+        return leaseTime < 0 ? getWatchdogTimeout() : TimeUnit.SECONDS.toMillis(leaseTime);
+    }
+
+    private long getWatchdogTimeout() {
+        return redissonClient.getConfig().getLockWatchdogTimeout();
+    }
+}
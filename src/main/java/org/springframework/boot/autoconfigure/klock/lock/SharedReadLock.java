@@ -0,0 +1,147 @@
+package org.springframework.boot.autoconfigure.klock.lock;
+
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 节点内共享的读锁，同一锁名称的本地读者共用一次Redis读锁获取，加入和离开共享只修改本地计数。
+ * 读者的租期不再单独生效，共享的读锁持有到最后一个本地读者离开为止，由看门狗续期；
+ * 本对象只代表一次加锁，重复释放返回NOT_OWNER。
+ * 持有者已持有本节点的同名写锁时改用自己的Redis读锁：Redisson只允许写锁的持有者本身穿过写锁获取读锁
+ *
+ * @author kl
+ */
+public class SharedReadLock implements Lock {
+
+    private final ReadLockShares shares;
+
+    private final Lock ownerReadLock;
+
+    private final LockInfo lockInfo;
+
+    private final AtomicBoolean acquired = new AtomicBoolean();
+
+    private volatile long owner;
+
+    /**
+     * 通过持有者自己的读锁（锁降级）获得
+     */
+    private volatile boolean downgraded;
+
+    /**
+     * @param ownerReadLock 以持有者身份获取的Redis读锁，用于持有写锁时的锁降级
+     */
+    SharedReadLock(ReadLockShares shares, Lock ownerReadLock, LockInfo lockInfo) {
+        this.shares = shares;
+        this.ownerReadLock = ownerReadLock;
+        this.lockInfo = lockInfo;
+    }
+
+    @Override
+    public boolean acquire() {
+        return acquire(lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean acquire(long waitTime, TimeUnit unit) {
+        long threadId = Thread.currentThread().getId();
+        if (shares.isWriteHeldBy(lockInfo.getLockName(), threadId)) {
+            return downgraded(threadId, ownerReadLock.acquire(waitTime, unit));
+        }
+        CompletableFuture<Boolean> joined = join(threadId, unit.toNanos(waitTime));
+        try {
+            return joined.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            //中断后获取仍可能成功，成功时立即离开共享
+            joined.thenAccept(success -> {
+                if (success) {
+                    unlockAsync(threadId);
+                }
+            });
+            return false;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public ReleaseResult unlock() {
+        if (downgraded) {
+            return acquired.compareAndSet(true, false) ? ownerReadLock.unlock() : ReleaseResult.NOT_OWNER;
+        }
+        return unlockAsync(owner).toCompletableFuture().join();
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId) {
+        return acquireAsync(ownerId, lockInfo.getWaitTime(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId, long waitTime, TimeUnit unit) {
+        if (shares.isWriteHeldBy(lockInfo.getLockName(), ownerId)) {
+            return ownerReadLock.acquireAsync(ownerId, waitTime, unit)
+                    .thenApply(success -> downgraded(ownerId, success));
+        }
+        return join(ownerId, unit.toNanos(waitTime));
+    }
+
+    @Override
+    public CompletionStage<ReleaseResult> unlockAsync(long ownerId) {
+        if (!acquired.compareAndSet(true, false)) {
+            return CompletableFuture.completedFuture(ReleaseResult.NOT_OWNER);
+        }
+        if (downgraded) {
+            return ownerReadLock.unlockAsync(owner);
+        }
+        return shares.release(lockInfo.getLockName(), owner);
+    }
+
+    @Override
+    public boolean isRenewable() {
+        return true;
+    }
+
+    /**
+     * 共享的读锁由看门狗续期，仍在共享中即视为续期成功
+     */
+    @Override
+    public CompletionStage<Boolean> renewAsync(long ownerId) {
+        return downgraded ? ownerReadLock.renewAsync(ownerId) : isHeldAsync(ownerId);
+    }
+
+    @Override
+    public CompletionStage<Boolean> isHeldAsync(long ownerId) {
+        if (downgraded) {
+            return ownerReadLock.isHeldAsync(ownerId);
+        }
+        return CompletableFuture.completedFuture(acquired.get() && shares.isHeld(lockInfo.getLockName()));
+    }
+
+    private boolean downgraded(long ownerId, boolean success) {
+        if (success) {
+            owner = ownerId;
+            downgraded = true;
+            acquired.set(true);
+        }
+        return success;
+    }
+
+    private CompletableFuture<Boolean> join(long ownerId, long waitNanos) {
+        return shares.acquire(lockInfo.getLockName(), ownerId, waitNanos).thenApply(success -> {
+            if (success) {
+                owner = ownerId;
+                acquired.set(true);
+            }
+            return success;
+        });
+    }
+}
@@ -1,50 +1,28 @@
 package org.springframework.boot.autoconfigure.klock.lock;
 
-import org.redisson.api.RReadWriteLock;
+import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.boot.autoconfigure.klock.model.LockInfo;
 
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-
 /**
  * Created by kl on 2017/12/29.
  */
-public class WriteLock implements Lock {
-
-    private  RReadWriteLock rLock;
+public class WriteLock extends AbstractRedissonLock {
 
-    private final LockInfo lockInfo;
+    private final RedissonClient redissonClient;
 
-    private RedissonClient redissonClient;
-
-    public WriteLock(RedissonClient redissonClient,LockInfo info) {
+    public WriteLock(RedissonClient redissonClient,LockInfo lockInfo) {
+        super(lockInfo);
         this.redissonClient = redissonClient;
-        this.lockInfo = info;
     }
 
     @Override
-    public boolean acquire() {
-        try {
-            rLock=redissonClient.getReadWriteLock(lockInfo.getLockName());
-            return rLock.writeLock().tryLock(lockInfo.getWaitTime(), lockInfo.getLeaseTime(), TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            return false;
-        }
+    protected RLock createRLock() {
+        return redissonClient.getReadWriteLock(lockInfo.getLockName()).writeLock();
     }
 
     @Override
-    public boolean release() {
-        if(rLock.writeLock().isHeldByCurrentThread()){
-            try {
-                return rLock.writeLock().forceUnlockAsync().get();
-            } catch (InterruptedException e) {
-                return false;
-            } catch (ExecutionException e) {
-                return false;
-            }
-        }
-
-        return false;
+    protected String getLeaseFieldSuffix() {
+        return ":write";
     }
 }
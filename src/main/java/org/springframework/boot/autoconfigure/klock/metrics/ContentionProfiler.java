@@ -0,0 +1,140 @@
+package org.springframework.boot.autoconfigure.klock.metrics;
+
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 热点锁竞争分析：按完整锁名称（含业务key）统计等待最多、等待时间最长和超时最多的锁，
+ * 每类各用一个Space-Saving统计，内存有界。
+ * 未超过竞争阈值的加锁直接忽略；统计更新时只尝试一次加锁，抢不到则丢弃本次样本，不阻塞业务线程
+ *
+ * @author kl
+ */
+public class ContentionProfiler {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final long contendedThresholdNanos;
+
+    private final SpaceSaving contended;
+
+    private final SpaceSaving waits;
+
+    private final SpaceSaving timeouts;
+
+    /**
+     * 因统计正在被其他线程更新而丢弃的样本数
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile long windowStart = System.currentTimeMillis();
+
+    /**
+     * @param capacity             每类统计保存的锁名称数量
+     * @param contendedThresholdMs 等待超过该毫秒数的加锁视为发生竞争
+     */
+    public ContentionProfiler(int capacity, long contendedThresholdMs) {
+        this.contendedThresholdNanos = TimeUnit.MILLISECONDS.toNanos(contendedThresholdMs);
+        this.contended = new SpaceSaving(capacity);
+        this.waits = new SpaceSaving(capacity);
+        this.timeouts = new SpaceSaving(capacity);
+    }
+
+    /**
+     * 记录一次加锁
+     *
+     * @param lockInfo 锁信息
+     * @param nanos    获取锁阻塞的纳秒数
+     * @param acquired 是否在等待时间内获得锁
+     */
+    public void record(LockInfo lockInfo, long nanos, boolean acquired) {
+        if (acquired && nanos < contendedThresholdNanos) {
+            return;
+        }
+        if (!lock.tryLock()) {
+            dropped.increment();
+            return;
+        }
+        try {
+            String lockName = lockInfo.getLockName();
+            contended.add(lockName, 1L);
+            waits.add(lockName, TimeUnit.NANOSECONDS.toMicros(nanos));
+            if (!acquired) {
+                timeouts.add(lockName, 1L);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前统计窗口的快照
+     *
+     * @param limit 每类返回的锁名称数量
+     */
+    public Map<String, Object> snapshot(int limit) {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            snapshot.put("windowStart", windowStart);
+            snapshot.put("dropped", dropped.sum());
+            snapshot.put("contended", contended.top(limit));
+            snapshot.put("waitMicros", waits.top(limit));
+            snapshot.put("timeouts", timeouts.top(limit));
+        } finally {
+            lock.unlock();
+        }
+        return snapshot;
+    }
+
+    /**
+     * 清空统计，开始新的窗口
+     */
+    public void reset() {
+        lock.lock();
+        try {
+            contended.clear();
+            waits.clear();
+            timeouts.clear();
+            dropped.reset();
+            windowStart = System.currentTimeMillis();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static final class HeavyHitter {
+
+        private final String lockName;
+
+        private final long count;
+
+        private final long error;
+
+        HeavyHitter(String lockName, long count, long error) {
+            this.lockName = lockName;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getLockName() {
+            return lockName;
+        }
+
+        /**
+         * 计数的上限，真实值不小于count - error
+         */
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.springframework.boot.autoconfigure.klock.metrics;
+
+import org.springframework.boot.autoconfigure.klock.lock.Lock;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本节点当前持有的锁，每次成功加锁登记一条记录，释放前移除。
+ * 登记和移除只是一次ConcurrentHashMap的写入，快照遍历是弱一致的，不会阻塞加锁和释放
+ *
+ * @author kl
+ */
+public class HeldLockRegistry {
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final ConcurrentHashMap<Long, HeldLock> held = new ConcurrentHashMap<>(256);
+
+    /**
+     * 登记一次加锁
+     *
+     * @param ownerId 加锁时使用的持有者标识，同步加锁为线程id
+     * @return 释放前传给unregister的记录
+     */
+    public HeldLock register(LockInfo lockInfo, Lock lock, long ownerId) {
+        HeldLock entry = new HeldLock(sequence.incrementAndGet(), lockInfo, lock, ownerId,
+                ownerId > 0 ? Thread.currentThread().getName() : null);
+        held.put(entry.id, entry);
+        return entry;
+    }
+
+    public void unregister(HeldLock entry) {
+        held.remove(entry.id, entry);
+    }
+
+    /**
+     * 按持有时间从长到短排列的快照
+     */
+    public List<HeldLock> snapshot() {
+        List<HeldLock> snapshot = new ArrayList<>(held.values());
+        snapshot.sort(Comparator.comparingLong(HeldLock::getAcquiredAt));
+        return snapshot;
+    }
+
+    /**
+     * 以记录的持有者身份释放一次加锁，用于清理卡住的持有者。
+     * 原持有者之后释放时会得到释放失败的结果，按releaseTimeoutStrategy处理。
+     * 开启本地锁时同步加锁还持有只有加锁线程能释放的本地锁，这样的记录拒绝强制释放并保留在登记表中
+     *
+     * @return 释放结果，记录不存在时为null，拒绝释放时为LOCALLY_HELD
+     */
+    public ReleaseResult forceRelease(long id, long timeout, TimeUnit unit) throws Exception {
+        HeldLock entry = held.get(id);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.lock.isLocallyHeld()) {
+            return ReleaseResult.LOCALLY_HELD;
+        }
+        if (!held.remove(id, entry)) {
+            return null;
+        }
+        return entry.lock.unlockAsync(entry.ownerId).toCompletableFuture().get(timeout, unit);
+    }
+
+    public int size() {
+        return held.size();
+    }
+
+    public static class HeldLock {
+
+        private final long id;
+
+        private final String lockName;
+
+        private final String lockType;
+
+        private final String thread;
+
+        private final long ownerId;
+
+        private final long acquiredAt = System.currentTimeMillis();
+
+        /**
+         * 租期，单位：秒，-1表示持有期间自动续期
+         */
+        private final long leaseTime;
+
+        private final Lock lock;
+
+        HeldLock(long id, LockInfo lockInfo, Lock lock, long ownerId, String thread) {
+            this.id = id;
+            this.lockName = lockInfo.getLockName();
+            this.lockType = lockInfo.getType() != null ? lockInfo.getType().name() : null;
+            this.leaseTime = lockInfo.getLeaseTime();
+            this.lock = lock;
+            this.ownerId = ownerId;
+            this.thread = thread;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getLockName() {
+            return lockName;
+        }
+
+        public String getLockType() {
+            return lockType;
+        }
+
+        /**
+         * 加锁线程的名称，异步加锁的持有者不是线程，为null
+         */
+        public String getThread() {
+            return thread;
+        }
+
+        public long getOwnerId() {
+            return ownerId;
+        }
+
+        public long getAcquiredAt() {
+            return acquiredAt;
+        }
+
+        public long getHeldMillis() {
+            return System.currentTimeMillis() - acquiredAt;
+        }
+
+        /**
+         * 按本节点时钟估算的剩余租期，负数表示租期已过但仍未释放，自动续期时为null
+         */
+        public Long getLeaseRemainingMillis() {
+            return leaseTime < 0 ? null : TimeUnit.SECONDS.toMillis(leaseTime) - getHeldMillis();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.springframework.boot.autoconfigure.klock.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
+import org.springframework.lang.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * klock的actuator端点：GET查看热点锁和本节点持有的锁，DELETE清空热点统计开始新的窗口，
+ * DELETE /{id} 强制释放一条卡住的持有记录
+ *
+ * @author kl
+ */
+@Endpoint(id = "klock")
+public class KlockEndpoint {
+
+    private static final int DEFAULT_LIMIT = 20;
+
+    private final ContentionProfiler contentionProfiler;
+
+    private final HeldLockRegistry heldLockRegistry;
+
+    private final long forceReleaseTimeout;
+
+    /**
+     * @param contentionProfiler  未开启热点统计时为null
+     * @param heldLockRegistry    未开启持有锁登记时为null
+     * @param forceReleaseTimeout 强制释放的超时时间，单位：毫秒
+     */
+    public KlockEndpoint(ContentionProfiler contentionProfiler, HeldLockRegistry heldLockRegistry,
+                         long forceReleaseTimeout) {
+        this.contentionProfiler = contentionProfiler;
+        this.heldLockRegistry = heldLockRegistry;
+        this.forceReleaseTimeout = forceReleaseTimeout;
+    }
+
+    @ReadOperation
+    public Map<String, Object> contention(@Nullable Integer limit) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (contentionProfiler != null) {
+            result.putAll(contentionProfiler.snapshot(limit != null ? limit : DEFAULT_LIMIT));
+        }
+        if (heldLockRegistry != null) {
+            result.put("held", heldLockRegistry.snapshot());
+        }
+        return result;
+    }
+
+    @DeleteOperation
+    public void reset() {
+        if (contentionProfiler != null) {
+            contentionProfiler.reset();
+        }
+    }
+
+    /**
+     * @return 释放结果，记录不存在时为null
+     */
+    @DeleteOperation
+    public ReleaseResult release(@Selector long id) throws Exception {
+        if (heldLockRegistry == null) {
+            return null;
+        }
+        return heldLockRegistry.forceRelease(id, forceReleaseTimeout, TimeUnit.MILLISECONDS);
+    }
+}
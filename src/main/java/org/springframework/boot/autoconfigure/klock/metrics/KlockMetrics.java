@@ -0,0 +1,69 @@
+package org.springframework.boot.autoconfigure.klock.metrics;
+
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+
+/**
+ * 锁的监控指标记录接口，默认实现不做任何记录
+ *
+ * @author kl
+ */
+public interface KlockMetrics {
+
+    /**
+     * 不记录任何指标
+     */
+    KlockMetrics NONE = new KlockMetrics() {
+    };
+
+    /**
+     * 记录一次获取锁的耗时
+     *
+     * @param lockInfo 锁信息
+     * @param nanos    获取锁阻塞的纳秒数
+     * @param acquired 是否获取成功
+     */
+    default void recordAcquire(LockInfo lockInfo, long nanos, boolean acquired) {
+    }
+
+    /**
+     * 记录一次持有锁的时长
+     *
+     * @param lockInfo 锁信息
+     * @param nanos    从获得锁到释放锁的纳秒数
+     */
+    default void recordHold(LockInfo lockInfo, long nanos) {
+    }
+
+    /**
+     * 记录一次获取锁超时，strategy为最终执行的超时处理策略
+     */
+    default void recordAcquireFailure(LockInfo lockInfo, String strategy) {
+    }
+
+    /**
+     * 记录一次释放锁时锁已超时
+     */
+    default void recordReleaseFailure(LockInfo lockInfo) {
+    }
+
+    /**
+     * 记录一次KEEP_ACQUIRE策略下的重试
+     */
+    default void recordRetry(LockInfo lockInfo) {
+    }
+
+    /**
+     * 记录一次批量续期
+     *
+     * @param leases 本批续期的租期数
+     * @param nanos  从计划续期时间到续期完成的纳秒数
+     */
+    default void recordRenewal(int leases, long nanos) {
+    }
+
+    /**
+     * 记录一次续期时发现锁已不再被持有
+     */
+    default void recordLeaseLost() {
+    }
+}
@@ -0,0 +1,167 @@
+package org.springframework.boot.autoconfigure.klock.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.LockType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Micrometer的锁监控指标，按锁名称模板和锁类型分组。
+ * 锁名称模板不含业务key，超出maxLockNames的名称统一归入{@value #OVERFLOW_LOCK_NAME}，保证标签基数有界
+ *
+ * @author kl
+ */
+public class MicrometerKlockMetrics implements KlockMetrics, MeterBinder {
+
+    public static final String OVERFLOW_LOCK_NAME = "_other";
+
+    private static final LockType[] LOCK_TYPES = LockType.values();
+
+    /**
+     * 指标先注册在内部的组合注册表上，绑定到实际的注册表后才会输出
+     */
+    private final CompositeMeterRegistry registry = new CompositeMeterRegistry();
+
+    private final Map<String, LockMeters[]> lockMeters = new ConcurrentHashMap<>();
+
+    private final int maxLockNames;
+
+    private final Timer renewalLag;
+
+    private final DistributionSummary renewalBatchSize;
+
+    private final Counter leasesLost;
+
+    public MicrometerKlockMetrics(int maxLockNames) {
+        this.maxLockNames = maxLockNames;
+        this.renewalLag = Timer.builder("klock.renewal.lag")
+                .description("Time from the scheduled lease renewal tick to the completion of the renewal batch")
+                .register(registry);
+        this.renewalBatchSize = DistributionSummary.builder("klock.renewal.batch.size")
+                .description("Leases renewed in one pipelined batch")
+                .register(registry);
+        this.leasesLost = Counter.builder("klock.renewal.lost")
+                .description("Leases found no longer held when renewing")
+                .register(registry);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        registry.add(meterRegistry);
+    }
+
+    @Override
+    public void recordAcquire(LockInfo lockInfo, long nanos, boolean acquired) {
+        LockMeters meters = getLockMeters(lockInfo);
+        (acquired ? meters.acquired : meters.timedOut).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordHold(LockInfo lockInfo, long nanos) {
+        getLockMeters(lockInfo).hold.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordAcquireFailure(LockInfo lockInfo, String strategy) {
+        getLockMeters(lockInfo).acquireFailure(strategy).increment();
+    }
+
+    @Override
+    public void recordReleaseFailure(LockInfo lockInfo) {
+        getLockMeters(lockInfo).releaseFailures.increment();
+    }
+
+    @Override
+    public void recordRetry(LockInfo lockInfo) {
+        getLockMeters(lockInfo).retries.increment();
+    }
+
+    @Override
+    public void recordRenewal(int leases, long nanos) {
+        renewalLag.record(nanos, TimeUnit.NANOSECONDS);
+        renewalBatchSize.record(leases);
+    }
+
+    @Override
+    public void recordLeaseLost() {
+        leasesLost.increment();
+    }
+
+    private LockMeters getLockMeters(LockInfo lockInfo) {
+        String lockName = lockInfo.getNameTemplate() != null ? lockInfo.getNameTemplate() : lockInfo.getLockName();
+        LockMeters[] metersByType = lockMeters.get(lockName);
+        if (metersByType == null) {
+            if (lockMeters.size() >= maxLockNames) {
+                lockName = OVERFLOW_LOCK_NAME;
+            }
+            metersByType = lockMeters.computeIfAbsent(lockName, key -> new LockMeters[LOCK_TYPES.length]);
+        }
+        LockType type = lockInfo.getType();
+        LockMeters meters = metersByType[type.ordinal()];
+        if (meters == null) {
+            //并发创建时注册表会返回同一个指标实例，无需加锁
+            meters = new LockMeters(lockName, type);
+            metersByType[type.ordinal()] = meters;
+        }
+        return meters;
+    }
+
+    private final class LockMeters {
+
+        private final String lockName;
+
+        private final String type;
+
+        private final Timer acquired;
+
+        private final Timer timedOut;
+
+        private final Timer hold;
+
+        private final Counter releaseFailures;
+
+        private final Counter retries;
+
+        private final Map<String, Counter> acquireFailures = new ConcurrentHashMap<>(4);
+
+        LockMeters(String lockName, LockType type) {
+            this.lockName = lockName;
+            this.type = type.name();
+            this.acquired = Timer.builder("klock.acquire")
+                    .description("Time spent waiting to acquire the lock")
+                    .tags("name", lockName, "type", this.type, "result", "acquired")
+                    .register(registry);
+            this.timedOut = Timer.builder("klock.acquire")
+                    .description("Time spent waiting to acquire the lock")
+                    .tags("name", lockName, "type", this.type, "result", "timeout")
+                    .register(registry);
+            this.hold = Timer.builder("klock.hold")
+                    .description("Time the lock was held")
+                    .tags("name", lockName, "type", this.type)
+                    .register(registry);
+            this.releaseFailures = Counter.builder("klock.release.failures")
+                    .description("Releases that found the lock lease already expired")
+                    .tags("name", lockName, "type", this.type)
+                    .register(registry);
+            this.retries = Counter.builder("klock.acquire.retries")
+                    .description("Acquire retries made by the KEEP_ACQUIRE strategy")
+                    .tags("name", lockName, "type", this.type)
+                    .register(registry);
+        }
+
+        Counter acquireFailure(String strategy) {
+            return acquireFailures.computeIfAbsent(strategy, key -> Counter.builder("klock.acquire.failures")
+                    .description("Acquire timeouts by the lock timeout strategy applied")
+                    .tags("name", lockName, "type", type, "strategy", key)
+                    .register(registry));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.springframework.boot.autoconfigure.klock.metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving算法的heavy hitter统计，最多保存capacity个key，内存有界。
+ * 新key在已满时替换当前计数最小的key并继承其计数作为误差上限，计数支持权重。
+ * 非线程安全，由调用方加锁
+ *
+ * @author kl
+ */
+final class SpaceSaving {
+
+    private final int capacity;
+
+    private final Map<String, Counter> counters;
+
+    SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    void add(String key, long weight) {
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            counter.count += weight;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(key, new Counter(key, weight, 0L));
+            return;
+        }
+        Counter min = null;
+        for (Counter candidate : counters.values()) {
+            if (min == null || candidate.count < min.count) {
+                min = candidate;
+            }
+        }
+        counters.remove(min.key);
+        counters.put(key, new Counter(key, min.count + weight, min.count));
+    }
+
+    /**
+     * 按计数从大到小返回前limit个key
+     */
+    List<ContentionProfiler.HeavyHitter> top(int limit) {
+        List<Counter> sorted = new ArrayList<>(counters.values());
+        sorted.sort((a, b) -> Long.compare(b.count, a.count));
+        List<ContentionProfiler.HeavyHitter> top = new ArrayList<>(Math.min(limit, sorted.size()));
+        for (int i = 0; i < sorted.size() && i < limit; i++) {
+            Counter counter = sorted.get(i);
+            top.add(new ContentionProfiler.HeavyHitter(counter.key, counter.count, counter.error));
+        }
+        return top;
+    }
+
+    void clear() {
+        counters.clear();
+    }
+
+    private static final class Counter {
+
+        private final String key;
+
+        private long count;
+
+        /**
+         * 替换时继承的计数，真实计数在 count - error 与 count 之间
+         */
+        private final long error;
+
+        Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
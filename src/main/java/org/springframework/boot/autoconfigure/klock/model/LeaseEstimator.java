@@ -0,0 +1,142 @@
+package org.springframework.boot.autoconfigure.klock.model;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按方法的持锁时间自适应租期：持锁时间按毫秒计入对数分桶的直方图（每个2的幂区间4个桶，误差不超过25%），
+ * 租期取指定分位数乘以余量，向上取整到秒并限制在上下限之间。
+ * 记录只是一次原子自增，每64次记录才重新计算一次租期；样本超过衰减阈值时所有桶减半，旧样本的权重逐渐降低。
+ * 样本不足时使用上限，即方法原本配置的租期
+ *
+ * @author kl
+ */
+public class LeaseEstimator {
+
+    private static final int SUB_BUCKETS = 4;
+
+    /**
+     * 最大约2^25毫秒（9小时），更长的持锁时间计入最后一个桶
+     */
+    private static final int MAX_EXPONENT = 25;
+
+    private static final int BUCKETS = SUB_BUCKETS * MAX_EXPONENT;
+
+    private static final int RECALCULATE_MASK = 63;
+
+    private static final long DECAY_THRESHOLD = 1024;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong records = new AtomicLong();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final double percentile;
+
+    private final double headroom;
+
+    private final long minLeaseTime;
+
+    private final long maxLeaseTime;
+
+    private final long minSamples;
+
+    private volatile long leaseTime;
+
+    /**
+     * @param percentile   取值的分位数，如0.99
+     * @param headroom     分位数的放大倍数
+     * @param minLeaseTime 租期下限，单位：秒
+     * @param maxLeaseTime 租期上限，单位：秒
+     * @param minSamples   开始自适应前需要的样本数
+     */
+    public LeaseEstimator(double percentile, double headroom, long minLeaseTime, long maxLeaseTime, long minSamples) {
+        this.percentile = percentile;
+        this.headroom = headroom;
+        this.minLeaseTime = minLeaseTime;
+        this.maxLeaseTime = maxLeaseTime;
+        this.minSamples = minSamples;
+        this.leaseTime = maxLeaseTime;
+    }
+
+    /**
+     * 当前的租期，单位：秒
+     */
+    public long getLeaseTime() {
+        return leaseTime;
+    }
+
+    /**
+     * 记录一次持锁时间
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(indexOf(TimeUnit.NANOSECONDS.toMillis(nanos)));
+        if ((records.incrementAndGet() & RECALCULATE_MASK) == 0) {
+            recalculate();
+        }
+    }
+
+    /**
+     * 只由一个线程计算，其他线程跳过，不阻塞业务
+     */
+    private void recalculate() {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += counts.get(i);
+            }
+            if (total < minSamples) {
+                return;
+            }
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            int index = BUCKETS - 1;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    index = i;
+                    break;
+                }
+            }
+            long leaseMillis = (long) Math.ceil(upperBoundOf(index) * headroom);
+            long seconds = (leaseMillis + 999) / 1000;
+            leaseTime = Math.max(minLeaseTime, Math.min(maxLeaseTime, seconds));
+            if (total > DECAY_THRESHOLD) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    counts.getAndUpdate(i, count -> count >> 1);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static int indexOf(long millis) {
+        if (millis < SUB_BUCKETS) {
+            return (int) Math.max(millis, 0L);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(millis);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        return SUB_BUCKETS * (exponent - 1) + (int) ((millis >> (exponent - 2)) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * 桶内的最大毫秒数
+     */
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + 1;
+        long width = 1L << (exponent - 2);
+        return (SUB_BUCKETS + index % SUB_BUCKETS) * width + width - 1;
+    }
+}
@@ -1,5 +1,6 @@
 package org.springframework.boot.autoconfigure.klock.model;
 
+import java.util.List;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.autoconfigure.klock.config.KlockConfig;
@@ -13,6 +14,30 @@ import org.springframework.boot.autoconfigure.klock.core.LockHandler;
 public class LockInfo<T> {
 
   private String lockName;
+  /**
+   * 锁名称模板，即不含业务key的锁名称，用于监控指标分组
+   */
+  private String nameTemplate;
+  /**
+   * 多key锁的各个锁名称，已排序去重，非多key锁时为null
+   */
+  private List<String> lockNames;
+  /**
+   * 加锁时是否生成fencing token，仅支持可重入锁
+   */
+  private boolean fenced;
+  /**
+   * Semaphore锁的许可总数
+   */
+  private int permits = 1;
+  /**
+   * 是否把持锁者的返回值共享给并发等待的调用方
+   */
+  private boolean singleFlight;
+  /**
+   * 自适应租期的估算器，记录每次的持锁时间，未开启时为null
+   */
+  private LeaseEstimator leaseEstimator;
   private LockType type = LockType.Reentrant;
   private long waitTime = KlockConfig.DEFAULT_WAIT_TIME;
   private long leaseTime = KlockConfig.DEFAULT_LEASE_TIME;
@@ -91,4 +116,22 @@ public class LockInfo<T> {
     this.lockName = lockName;
   }
 
+  /**
+   * 复制一份开启fencing token的锁信息，调用方传入的锁信息可能被复用，不能直接修改
+   */
+  public LockInfo<T> toFenced() {
+    if (fenced) {
+      return this;
+    }
+    LockInfo<T> copy = new LockInfo<>(type, lockName, waitTime, lockTimeoutStrategy, leaseTime,
+        releaseTimeoutStrategy, customLockTimeoutHandler, customReleaseTimeoutHandler);
+    copy.setNameTemplate(nameTemplate);
+    copy.setLockNames(lockNames);
+    copy.setPermits(permits);
+    copy.setSingleFlight(singleFlight);
+    copy.setLeaseEstimator(leaseEstimator);
+    copy.setFenced(true);
+    return copy;
+  }
+
 }
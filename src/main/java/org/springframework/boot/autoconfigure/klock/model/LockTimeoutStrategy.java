@@ -5,6 +5,7 @@ import org.springframework.boot.autoconfigure.klock.handler.KlockTimeoutExceptio
 import org.springframework.boot.autoconfigure.klock.handler.lock.LockTimeoutHandler;
 import org.springframework.boot.autoconfigure.klock.lock.Lock;
 
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 
@@ -30,6 +31,9 @@ public enum LockTimeoutStrategy implements LockTimeoutHandler {
     FAIL_FAST() {
         @Override
         public void handle(LockInfo lockInfo, Lock lock) {
+            if (lockInfo.getWaitTime() == 0) {
+                throw KlockTimeoutException.nonWaiting(lockInfo.getLockName());
+            }
 
             String errorMsg = String.format("Failed to acquire Lock(%s) with timeout(%ds)", lockInfo.getLockName(), lockInfo.getWaitTime());
             throw new KlockTimeoutException(errorMsg);
@@ -41,18 +45,14 @@ public enum LockTimeoutStrategy implements LockTimeoutHandler {
      */
     KEEP_ACQUIRE() {
 
-        private static final long DEFAULT_INTERVAL = 100L;
-
-        private static final long DEFAULT_MAX_INTERVAL = 3 * 60 * 1000L;
-
         @Override
         public void handle(LockInfo lockInfo, Lock lock) {
 
-            long interval = DEFAULT_INTERVAL;
+            long interval = KEEP_ACQUIRE_INTERVAL;
 
             while(!lock.acquire()) {
 
-                if(interval > DEFAULT_MAX_INTERVAL) {
+                if(interval > KEEP_ACQUIRE_MAX_INTERVAL) {
                     String errorMsg = String.format("Failed to acquire Lock(%s) after too many times, this may because dead lock occurs.",
                                                      lockInfo.getLockName());
                     throw new KlockTimeoutException(errorMsg);
@@ -66,5 +66,74 @@ public enum LockTimeoutStrategy implements LockTimeoutHandler {
                 }
             }
         }
+    },
+
+    /**
+     * 一直阻塞，直到获得锁，等待期间订阅锁的释放通知，锁释放后立即被唤醒，
+     * 超过总等待时间后报错
+     */
+    KEEP_ACQUIRE_NOTIFIED() {
+
+        @Override
+        public void handle(LockInfo lockInfo, Lock lock) {
+            awaitNotified(lockInfo, lock, KEEP_ACQUIRE_NOTIFIED_TIMEOUT);
+        }
+    };
+
+    /**
+     * KEEP_ACQUIRE首次重试的间隔，单位毫秒，之后每次翻倍
+     */
+    public static final long KEEP_ACQUIRE_INTERVAL = 100L;
+
+    /**
+     * KEEP_ACQUIRE重试间隔的上限，单位毫秒，超过后不再重试
+     */
+    public static final long KEEP_ACQUIRE_MAX_INTERVAL = 3 * 60 * 1000L;
+
+    /**
+     * KEEP_ACQUIRE_NOTIFIED的默认总等待时间，单位毫秒，RedisLockClient中以spring.klock.keep-acquire-notified-timeout为准
+     */
+    public static final long KEEP_ACQUIRE_NOTIFIED_TIMEOUT = 3 * 60 * 1000L;
+
+    /**
+     * KEEP_ACQUIRE_NOTIFIED单次等待释放通知的最长时间，单位毫秒，到期后重新订阅等待
+     */
+    public static final long KEEP_ACQUIRE_NOTIFIED_SLICE = 5 * 1000L;
+
+    /**
+     * KEEP_ACQUIRE_NOTIFIED两次等待之间的最大随机间隔，单位毫秒，避免等待者同时重试
+     */
+    public static final long KEEP_ACQUIRE_NOTIFIED_JITTER = 10L;
+
+    /**
+     * KEEP_ACQUIRE_NOTIFIED的等待过程，总等待时间由调用方指定
+     *
+     * @param timeout 总等待时间，单位毫秒
+     */
+    public static void awaitNotified(LockInfo lockInfo, Lock lock, long timeout) {
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        long remaining;
+
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+
+            if (lock.acquire(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(KEEP_ACQUIRE_NOTIFIED_SLICE)),
+                    TimeUnit.NANOSECONDS)) {
+                return;
+            }
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(nextNotifiedJitter());
+            } catch (InterruptedException e) {
+                throw new KlockTimeoutException("Failed to acquire Lock", e);
+            }
+        }
+        String errorMsg = String.format("Failed to acquire Lock(%s) within %dms, this may because dead lock occurs.",
+                                        lockInfo.getLockName(), timeout);
+        throw new KlockTimeoutException(errorMsg);
+    }
+
+    public static long nextNotifiedJitter() {
+        return ThreadLocalRandom.current().nextLong(KEEP_ACQUIRE_NOTIFIED_JITTER + 1);
     }
-}
\ No newline at end of file
+}
@@ -20,7 +20,15 @@ public enum LockType {
     /**
      * 写锁
      */
-    Write;
+    Write,
+    /**
+     * RedLock，在多个独立的Redis主节点上加锁，多数节点成功即获得锁
+     */
+    RedLock,
+    /**
+     * 信号量，同一锁名称最多permits个持有者，许可带租期
+     */
+    Semaphore;
 
     LockType() {
     }
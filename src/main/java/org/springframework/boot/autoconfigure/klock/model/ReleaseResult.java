@@ -0,0 +1,29 @@
+package org.springframework.boot.autoconfigure.klock.model;
+
+/**
+ * 释放锁的结果
+ *
+ * @author kl
+ */
+public enum ReleaseResult {
+    /**
+     * 已释放，可重入锁只释放一次持有
+     */
+    RELEASED,
+    /**
+     * 锁被其他持有者占用，说明本持有者的租期已过且锁已被他人获取
+     */
+    NOT_OWNER,
+    /**
+     * 锁已不存在，租期在释放前已到期
+     */
+    LEASE_EXPIRED,
+    /**
+     * 未释放：加锁线程仍持有只能由它自己释放的本地锁，只释放Redis锁会让本地锁一直被占用
+     */
+    LOCALLY_HELD;
+
+    public boolean isReleased() {
+        return this == RELEASED;
+    }
+}
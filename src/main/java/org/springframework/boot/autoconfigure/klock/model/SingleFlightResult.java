@@ -0,0 +1,32 @@
+package org.springframework.boot.autoconfigure.klock.model;
+
+import java.io.Serializable;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * single-flight模式下持锁者发布的方法返回值
+ *
+ * @author kl
+ */
+@Getter
+@Setter
+public class SingleFlightResult implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * 发布时间，毫秒时间戳，早于等待者到达时间的结果不会被共享
+   */
+  private long publishedAt;
+
+  private Object value;
+
+  public SingleFlightResult() {
+  }
+
+  public SingleFlightResult(long publishedAt, Object value) {
+    this.publishedAt = publishedAt;
+    this.value = value;
+  }
+}
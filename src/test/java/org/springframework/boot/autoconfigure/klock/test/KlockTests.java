@@ -1,20 +1,64 @@
 package org.springframework.boot.autoconfigure.klock.test;
 
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
+import org.redisson.Redisson;
+import org.redisson.api.RLock;
+import org.redisson.api.RReadWriteLock;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.config.Config;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.klock.config.KlockConfig;
+import org.springframework.boot.autoconfigure.klock.core.LockHandle;
+import org.springframework.boot.autoconfigure.klock.core.RedisLockClient;
 import org.springframework.boot.autoconfigure.klock.handler.KlockTimeoutException;
+import org.springframework.boot.autoconfigure.klock.lock.LettuceLockBackend;
+import org.springframework.boot.autoconfigure.klock.lock.LocalFirstLock;
+import org.springframework.boot.autoconfigure.klock.lock.LocalLocks;
+import org.springframework.boot.autoconfigure.klock.lock.Lock;
+import org.springframework.boot.autoconfigure.klock.lock.MemoryLockBackend;
+import org.springframework.boot.autoconfigure.klock.lock.RedLock;
+import org.springframework.boot.autoconfigure.klock.lock.RedLockNodes;
+import org.springframework.boot.autoconfigure.klock.lock.RedissonLockBackend;
+import org.springframework.boot.autoconfigure.klock.metrics.ContentionProfiler;
+import org.springframework.boot.autoconfigure.klock.metrics.HeldLockRegistry;
+import org.springframework.boot.autoconfigure.klock.metrics.KlockMetrics;
+import org.springframework.boot.autoconfigure.klock.metrics.MicrometerKlockMetrics;
+import org.springframework.boot.autoconfigure.klock.model.LeaseEstimator;
+import org.springframework.boot.autoconfigure.klock.model.LockInfo;
+import org.springframework.boot.autoconfigure.klock.model.LockTimeoutStrategy;
+import org.springframework.boot.autoconfigure.klock.model.LockType;
+import org.springframework.boot.autoconfigure.klock.model.ReleaseResult;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = KlockTestApplication.class)
@@ -26,6 +70,15 @@ public class KlockTests {
 	@Autowired
 	TimeoutService timeoutService;
 
+	@Autowired
+	RedisLockClient redisLockClient;
+
+	@Autowired
+	KlockConfig klockConfig;
+
+	@Autowired
+	RedissonClient redissonClient;
+
 	@Rule
 	public final ExpectedException exception = ExpectedException.none();
 
@@ -114,6 +167,604 @@ public class KlockTests {
 		Assert.assertEquals(result,"success");
 	}
 
+	/**
+	 * 测试异步加锁，业务在klock的异步线程池中执行，不占用Redis客户端的I/O线程
+	 */
+	@Test
+	public void asyncLock() throws Exception {
+		String handlerThread = testService.getValueAsync("async").get(10, TimeUnit.SECONDS);
+		Assert.assertTrue(handlerThread, handlerThread.startsWith("klock-async-"));
+	}
+
+	/**
+	 * 测试多key锁，批量锁与已持有的单个key冲突时整体获取失败
+	 */
+	@Test
+	public void multiKeyLock() throws Exception {
+		ExecutorService executorService = Executors.newFixedThreadPool(1);
+		executorService.submit(() -> testService.transfer("A", "B"));
+		TimeUnit.MILLISECONDS.sleep(500);
+
+		exception.expect(KlockTimeoutException.class);
+		testService.updateAccounts(Arrays.asList("C", "B"));
+	}
+
+	/**
+	 * 测试fencing token随每次加锁递增
+	 */
+	@Test
+	public void fencingToken() {
+		long first = testService.getFencingToken("fencing", 0L);
+		long second = testService.getFencingToken("fencing", 0L);
+		Assert.assertTrue(first > 0);
+		Assert.assertTrue(second > first);
+	}
+
+	/**
+	 * 测试锁名称已含hashtag时，fencing计数器沿用该hashtag，集群模式下与锁位于同一slot
+	 */
+	@Test
+	public void fencingTokenWithHashtag() throws Throwable {
+		LockInfo<Long> lockInfo = new LockInfo<>(LockType.Reentrant, "lock.{order}-1", 1, 10);
+		long token = redisLockClient.lockFenced(fencingToken -> fencingToken, lockInfo);
+		Assert.assertTrue(token > 0);
+		Assert.assertEquals(1, redissonClient.getKeys().countExists("klock_fencing:lock.{order}-1"));
+		Assert.assertEquals(0, redissonClient.getKeys().countExists("klock_fencing:{lock.{order}-1}"));
+	}
+
+	/**
+	 * 测试信号量最多permits个持有者，许可用完时获取失败
+	 */
+	@Test
+	public void semaphoreLock() throws Exception {
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+		executorService.submit(() -> testService.callDownstream());
+		executorService.submit(() -> testService.callDownstream());
+		TimeUnit.MILLISECONDS.sleep(500);
+
+		exception.expect(KlockTimeoutException.class);
+		testService.callDownstream();
+	}
+
+	/**
+	 * 测试single-flight模式下并发调用只执行一次，等待者拿到持锁者的返回值
+	 */
+	@Test
+	public void singleFlight() throws Exception {
+		ExecutorService executorService = Executors.newFixedThreadPool(5);
+		List<Future<Integer>> results = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			results.add(executorService.submit(() -> testService.rebuildProduct("p1")));
+		}
+		int first = results.get(0).get();
+		for (Future<Integer> result : results) {
+			Assert.assertEquals(first, result.get().intValue());
+		}
+	}
+
+	/**
+	 * 测试热点锁统计按竞争次数排序，未超过竞争阈值的加锁不计入
+	 */
+	@Test
+	public void contentionProfiler() {
+		ContentionProfiler profiler = new ContentionProfiler(2, 10);
+		long contended = TimeUnit.MILLISECONDS.toNanos(20);
+		for (int i = 0; i < 3; i++) {
+			profiler.record(new LockInfo("hot"), contended, true);
+		}
+		profiler.record(new LockInfo("cold"), contended, false);
+		profiler.record(new LockInfo("fast"), 0L, true);
+
+		List<ContentionProfiler.HeavyHitter> top = (List<ContentionProfiler.HeavyHitter>) profiler.snapshot(10).get("contended");
+		Assert.assertEquals(2, top.size());
+		Assert.assertEquals("hot", top.get(0).getLockName());
+		Assert.assertEquals(3, top.get(0).getCount());
+	}
+
+	/**
+	 * 测试自适应租期：样本不足时使用上限，之后按持锁时间分位数收紧
+	 */
+	@Test
+	public void leaseEstimator() {
+		LeaseEstimator estimator = new LeaseEstimator(0.99, 1.5, 1, 10, 100);
+		Assert.assertEquals(10, estimator.getLeaseTime());
+		for (int i = 0; i < 128; i++) {
+			estimator.record(TimeUnit.MILLISECONDS.toNanos(1500));
+		}
+		Assert.assertEquals(3, estimator.getLeaseTime());
+	}
+
+	/**
+	 * 测试持有凭证在加锁线程之外续期、查询和释放
+	 */
+	@Test
+	public void lockHandle() throws Exception {
+		LockInfo lockInfo = new LockInfo(LockType.Reentrant, "handle", 1, 10);
+		LockHandle handle = redisLockClient.acquire(lockInfo);
+		Assert.assertNotNull(handle);
+
+		ExecutorService executorService = Executors.newFixedThreadPool(1);
+		Assert.assertTrue(executorService.submit(handle::renew).get());
+		Assert.assertTrue(executorService.submit(handle::isHeld).get());
+		Assert.assertEquals(ReleaseResult.RELEASED, executorService.submit(handle::release).get());
+		Assert.assertFalse(handle.isHeld());
+
+		//不支持续期和查询的锁在加锁前被拒绝
+		try {
+			redisLockClient.acquire(new LockInfo(LockType.Semaphore, "handle", 1, 10));
+			Assert.fail();
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	/**
+	 * 测试登记持有的锁，强制释放后原持有者释放失败
+	 */
+	@Test
+	public void heldLockRegistry() throws Exception {
+		MemoryLockBackend backend = new MemoryLockBackend();
+		HeldLockRegistry registry = new HeldLockRegistry();
+		LockInfo lockInfo = new LockInfo(LockType.Reentrant, "stuck", 0, 10);
+		Lock lock = backend.getLock(lockInfo);
+		Assert.assertTrue(lock.acquire());
+		HeldLockRegistry.HeldLock held = registry.register(lockInfo, lock, Thread.currentThread().getId());
+		Assert.assertEquals(Thread.currentThread().getName(), registry.snapshot().get(0).getThread());
+
+		Assert.assertEquals(ReleaseResult.RELEASED, registry.forceRelease(held.getId(), 1, TimeUnit.SECONDS));
+		Assert.assertEquals(0, registry.size());
+		Assert.assertFalse(lock.unlock().isReleased());
+	}
+
+	/**
+	 * 测试内存锁互斥，租期到期后其他线程可获取
+	 */
+	@Test
+	public void memoryBackend() throws Exception {
+		MemoryLockBackend backend = new MemoryLockBackend();
+		LockInfo lockInfo = new LockInfo(LockType.Reentrant, "memory", 0, 1);
+		Assert.assertTrue(backend.getLock(lockInfo).acquire());
+
+		ExecutorService executorService = Executors.newFixedThreadPool(1);
+		Assert.assertFalse(executorService.submit(() -> backend.getLock(lockInfo).acquire()).get());
+		TimeUnit.MILLISECONDS.sleep(1100);
+		Assert.assertTrue(executorService.submit(() -> backend.getLock(lockInfo).acquire()).get());
+	}
+
+	/**
+	 * 测试RedLock：一个节点被占用时多数节点加锁成功，释放后所有节点都不再持有；
+	 * 多数节点被占用时获取失败，已获得的少数节点随即释放。节点取自配置的Redis上三个相互独立的数据库
+	 */
+	@Test
+	public void redLock() throws Exception {
+		List<RedissonClient> clients = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			Config config = new Config();
+			config.useSingleServer().setAddress(klockConfig.getAddress())
+					.setDatabase(klockConfig.getDatabase() + i)
+					.setPassword(klockConfig.getPassword());
+			clients.add(Redisson.create(config));
+		}
+		RedLockNodes nodes = new RedLockNodes(clients, 0.01, 100);
+		String name = "redLock";
+		long otherOwner = Long.MAX_VALUE;
+		try {
+			LockInfo lockInfo = new LockInfo(LockType.RedLock, name, 0, 10);
+			Assert.assertTrue(clients.get(0).getLock(name).tryLockAsync(0, 10, TimeUnit.SECONDS, otherOwner).get());
+			Lock quorum = new RedLock(nodes, lockInfo);
+			Assert.assertTrue(quorum.acquire());
+			Assert.assertTrue(clients.get(1).getLock(name).isLocked());
+			Assert.assertTrue(clients.get(2).getLock(name).isLocked());
+			Assert.assertEquals(ReleaseResult.RELEASED, quorum.unlock());
+			Assert.assertFalse(clients.get(1).getLock(name).isLocked());
+			Assert.assertFalse(clients.get(2).getLock(name).isLocked());
+
+			Assert.assertTrue(clients.get(1).getLock(name).tryLockAsync(0, 10, TimeUnit.SECONDS, otherOwner).get());
+			Lock minority = new RedLock(nodes, lockInfo);
+			Assert.assertFalse(minority.acquire());
+			Assert.assertFalse(clients.get(2).getLock(name).isLocked());
+		} finally {
+			for (RedissonClient client : clients) {
+				client.getLock(name).forceUnlock();
+			}
+			nodes.shutdown();
+		}
+	}
+
+	/**
+	 * 测试Micrometer指标的名称和标签：注解锁按不含业务key的名称模板分组，
+	 * 编程方式创建的锁没有模板，以完整锁名称作为标签，超出maxLockNames的名称归入_other
+	 */
+	@Test
+	public void micrometerMetrics() {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		MicrometerKlockMetrics metrics = new MicrometerKlockMetrics(2);
+		metrics.bindTo(meterRegistry);
+		for (String key : Arrays.asList("1", "2")) {
+			LockInfo annotated = new LockInfo(LockType.Reentrant, "lock.order-" + key, 1, 10);
+			annotated.setNameTemplate("lock.order");
+			metrics.recordAcquire(annotated, 1000L, true);
+			metrics.recordHold(annotated, 1000L);
+		}
+		LockInfo first = new LockInfo(LockType.Reentrant, "user-1", 1, 10);
+		LockInfo second = new LockInfo(LockType.Reentrant, "user-2", 1, 10);
+		metrics.recordAcquire(first, 1000L, false);
+		metrics.recordAcquireFailure(first, LockTimeoutStrategy.FAIL_FAST.name());
+		metrics.recordAcquire(second, 1000L, true);
+		metrics.recordRetry(second);
+		metrics.recordRenewal(3, 1000L);
+		metrics.recordLeaseLost();
+
+		Assert.assertEquals(2, meterRegistry.get("klock.acquire")
+				.tags("name", "lock.order", "type", "Reentrant", "result", "acquired").timer().count());
+		Assert.assertEquals(2, meterRegistry.get("klock.hold")
+				.tags("name", "lock.order", "type", "Reentrant").timer().count());
+		Assert.assertEquals(1, meterRegistry.get("klock.acquire")
+				.tags("name", "user-1", "type", "Reentrant", "result", "timeout").timer().count());
+		Assert.assertEquals(1.0, meterRegistry.get("klock.acquire.failures")
+				.tags("name", "user-1", "type", "Reentrant", "strategy", "FAIL_FAST").counter().count(), 0.0);
+		Assert.assertNull(meterRegistry.find("klock.acquire").tags("name", "user-2").timer());
+		Assert.assertEquals(1, meterRegistry.get("klock.acquire")
+				.tags("name", MicrometerKlockMetrics.OVERFLOW_LOCK_NAME, "type", "Reentrant", "result", "acquired")
+				.timer().count());
+		Assert.assertEquals(1.0, meterRegistry.get("klock.acquire.retries")
+				.tags("name", MicrometerKlockMetrics.OVERFLOW_LOCK_NAME).counter().count(), 0.0);
+		Assert.assertEquals(3.0, meterRegistry.get("klock.renewal.batch.size").summary().totalAmount(), 0.0);
+		Assert.assertEquals(1, meterRegistry.get("klock.renewal.lag").timer().count());
+		Assert.assertEquals(1.0, meterRegistry.get("klock.renewal.lost").counter().count(), 0.0);
+	}
+
+	/**
+	 * 测试统一续期调度：未指定租期的锁持有超过看门狗超时时间后仍被持有，多个锁在同一批中续期；
+	 * 续期时发现已不再持有的租期不再续期，并记录一次租期丢失。看门狗超时时间缩短为1.5秒
+	 */
+	@Test
+	public void leaseRenewalScheduler() throws Exception {
+		Config config = new Config();
+		config.setLockWatchdogTimeout(1500);
+		config.useSingleServer().setAddress(klockConfig.getAddress())
+				.setDatabase(klockConfig.getDatabase())
+				.setPassword(klockConfig.getPassword());
+		RedissonClient client = Redisson.create(config);
+		AtomicInteger largestBatch = new AtomicInteger();
+		AtomicInteger leasesLost = new AtomicInteger();
+		RedissonLockBackend backend = new RedissonLockBackend();
+		ReflectionTestUtils.setField(backend, "redissonClient", client);
+		ReflectionTestUtils.setField(backend, "klockConfig", new KlockConfig());
+		ReflectionTestUtils.setField(backend, "klockMetrics", new KlockMetrics() {
+			@Override
+			public void recordRenewal(int leases, long nanos) {
+				largestBatch.accumulateAndGet(leases, Math::max);
+			}
+
+			@Override
+			public void recordLeaseLost() {
+				leasesLost.incrementAndGet();
+			}
+		});
+		backend.init();
+		try {
+			Lock first = backend.getLock(new LockInfo(LockType.Reentrant, "renewal-1", 0, -1));
+			Lock second = backend.getLock(new LockInfo(LockType.Reentrant, "renewal-2", 0, -1));
+			Assert.assertTrue(first.acquire());
+			Assert.assertTrue(second.acquire());
+			TimeUnit.MILLISECONDS.sleep(3000);
+			Assert.assertTrue(client.getLock("renewal-1").isLocked());
+			Assert.assertTrue(client.getLock("renewal-2").isLocked());
+			Assert.assertEquals(2, largestBatch.get());
+
+			client.getLock("renewal-2").forceUnlock();
+			TimeUnit.MILLISECONDS.sleep(1200);
+			Object scheduler = ReflectionTestUtils.getField(backend, "renewalScheduler");
+			Map<?, ?> leases = (Map<?, ?>) ReflectionTestUtils.getField(scheduler, "leases");
+			Assert.assertEquals(1, leases.size());
+			Assert.assertEquals(1, leasesLost.get());
+			Assert.assertTrue(client.getLock("renewal-1").isLocked());
+			Assert.assertEquals(ReleaseResult.RELEASED, first.unlock());
+			Assert.assertTrue(leases.isEmpty());
+		} finally {
+			client.getLock("renewal-1").forceUnlock();
+			client.getLock("renewal-2").forceUnlock();
+			backend.destroy();
+			client.shutdown();
+		}
+	}
+
+	/**
+	 * 测试响应式方法在流完成、出错和取消时都释放锁，取消时的释放是异步的
+	 */
+	@Test
+	public void reactiveLock() throws Exception {
+		RLock lock = redissonClient.getLock("lock.reactive");
+		Assert.assertEquals("success", testService.getValueReactive(Mono.just("success")).block());
+		Assert.assertFalse(lock.isLocked());
+
+		try {
+			testService.getValuesReactive(Flux.error(new IllegalStateException("reactive"))).blockLast();
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			Assert.assertEquals("reactive", e.getMessage());
+		}
+		Assert.assertFalse(lock.isLocked());
+
+		CountDownLatch emitted = new CountDownLatch(1);
+		Disposable subscription = testService.getValuesReactive(Flux.interval(Duration.ofMillis(100)))
+				.subscribe(tick -> emitted.countDown());
+		Assert.assertTrue(emitted.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(lock.isLocked());
+		subscription.dispose();
+		long deadline = System.currentTimeMillis() + 1000;
+		while (lock.isLocked() && System.currentTimeMillis() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+		Assert.assertFalse(lock.isLocked());
+	}
+
+	/**
+	 * 测试Lettuce锁的重入、释放和租期到期，以及异步持有者的加锁和释放
+	 */
+	@Test
+	public void lettuceBackend() throws Exception {
+		URI address = URI.create(klockConfig.getAddress());
+		RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(address.getHost(), address.getPort());
+		configuration.setDatabase(klockConfig.getDatabase());
+		LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(configuration);
+		connectionFactory.afterPropertiesSet();
+		LettuceLockBackend backend = new LettuceLockBackend();
+		ReflectionTestUtils.setField(backend, "redisConnectionFactory", connectionFactory);
+		backend.init();
+		try {
+			ExecutorService executorService = Executors.newFixedThreadPool(1);
+			LockInfo lockInfo = new LockInfo(LockType.Reentrant, "lettuce", 0, 1);
+			Lock lock = backend.getLock(lockInfo);
+			Lock reentry = backend.getLock(lockInfo);
+			Assert.assertTrue(lock.acquire());
+			Assert.assertTrue(reentry.acquire());
+			Assert.assertFalse(executorService.submit(() -> backend.getLock(lockInfo).acquire()).get());
+			Assert.assertEquals(ReleaseResult.RELEASED, reentry.unlock());
+			Assert.assertTrue(lock.isHeldAsync(Thread.currentThread().getId()).toCompletableFuture().get());
+			Assert.assertEquals(ReleaseResult.RELEASED, lock.unlock());
+			Assert.assertEquals(ReleaseResult.LEASE_EXPIRED, lock.unlock());
+
+			Assert.assertTrue(lock.acquireAsync(-1L).toCompletableFuture().get());
+			Assert.assertFalse(lock.acquire());
+			Assert.assertEquals(ReleaseResult.RELEASED, lock.unlockAsync(-1L).toCompletableFuture().get());
+
+			Assert.assertTrue(lock.acquire());
+			TimeUnit.MILLISECONDS.sleep(1100);
+			Assert.assertTrue(executorService.submit(() -> backend.getLock(lockInfo).acquire()).get());
+			Assert.assertEquals(ReleaseResult.NOT_OWNER, lock.unlock());
+		} finally {
+			backend.destroy();
+			connectionFactory.destroy();
+		}
+	}
+
+	/**
+	 * 测试读锁共享：进行中的获取由后到的读者共用，最后一个读者离开时释放，
+	 * 等待中的本地写者阻挡新读者但不阻挡已持有的读者重入，写锁持有者可降级为读锁
+	 */
+	@Test
+	public void readLockSharing() throws Exception {
+		KlockConfig config = new KlockConfig();
+		config.getReadLockSharing().setEnabled(true);
+		RedissonLockBackend backend = new RedissonLockBackend();
+		ReflectionTestUtils.setField(backend, "redissonClient", redissonClient);
+		ReflectionTestUtils.setField(backend, "klockConfig", config);
+		backend.init();
+		RReadWriteLock redisLock = redissonClient.getReadWriteLock("readShare");
+		LockInfo readInfo = new LockInfo(LockType.Read, "readShare", 1, -1);
+		LockInfo writeInfo = new LockInfo(LockType.Write, "readShare", 1, -1);
+		try {
+			Assert.assertTrue(redisLock.writeLock().tryLockAsync(0, 10, TimeUnit.SECONDS, Long.MAX_VALUE).get());
+			Lock first = backend.getLock(readInfo);
+			Lock second = backend.getLock(readInfo);
+			CompletableFuture<Boolean> firstRead = first.acquireAsync(1L).toCompletableFuture();
+			CompletableFuture<Boolean> secondRead = second.acquireAsync(2L).toCompletableFuture();
+			TimeUnit.MILLISECONDS.sleep(200);
+			Assert.assertFalse(firstRead.isDone() || secondRead.isDone());
+			redisLock.writeLock().unlockAsync(Long.MAX_VALUE).get();
+			Assert.assertTrue(firstRead.get(1, TimeUnit.SECONDS));
+			Assert.assertTrue(secondRead.get(1, TimeUnit.SECONDS));
+			//两个读者只占用一个Redis读锁持有者，另一个字段是mode
+			Assert.assertEquals(2, redissonClient.getMap("readShare", StringCodec.INSTANCE).size());
+
+			Assert.assertEquals(ReleaseResult.RELEASED, first.unlockAsync(1L).toCompletableFuture().get());
+			Assert.assertTrue(redisLock.readLock().isLocked());
+			Assert.assertEquals(ReleaseResult.RELEASED, second.unlockAsync(2L).toCompletableFuture().get());
+			Assert.assertFalse(redisLock.readLock().isLocked());
+
+			Lock reader = backend.getLock(readInfo);
+			Assert.assertTrue(reader.acquireAsync(3L).toCompletableFuture().get());
+			ExecutorService executorService = Executors.newFixedThreadPool(1);
+			Future<Boolean> writer = executorService.submit(() -> {
+				Lock write = backend.getLock(writeInfo);
+				return write.acquire(5, TimeUnit.SECONDS) && write.unlock().isReleased();
+			});
+			TimeUnit.MILLISECONDS.sleep(200);
+			Assert.assertFalse(backend.getLock(readInfo).acquireAsync(4L, 0, TimeUnit.SECONDS).toCompletableFuture().get());
+			Lock reentry = backend.getLock(readInfo);
+			Assert.assertTrue(reentry.acquireAsync(3L, 0, TimeUnit.SECONDS).toCompletableFuture().get());
+			Assert.assertEquals(ReleaseResult.RELEASED, reentry.unlockAsync(3L).toCompletableFuture().get());
+			Assert.assertFalse(writer.isDone());
+			Assert.assertEquals(ReleaseResult.RELEASED, reader.unlockAsync(3L).toCompletableFuture().get());
+			Assert.assertTrue(writer.get(1, TimeUnit.SECONDS));
+
+			Lock write = backend.getLock(writeInfo);
+			Lock downgrade = backend.getLock(readInfo);
+			Assert.assertTrue(write.acquire());
+			Assert.assertTrue(downgrade.tryAcquire());
+			Assert.assertEquals(ReleaseResult.RELEASED, write.unlock());
+			Assert.assertTrue(redisLock.readLock().isLocked());
+			Assert.assertEquals(ReleaseResult.RELEASED, downgrade.unlock());
+			Assert.assertFalse(redisLock.readLock().isLocked());
+		} finally {
+			redisLock.writeLock().forceUnlock();
+			backend.destroy();
+		}
+	}
+
+	/**
+	 * 测试两级锁：同节点线程在本地锁上排队，每次加锁只访问一次Redis，Redis加锁失败或抛出异常时释放本地锁
+	 */
+	@Test
+	public void localFirstLock() throws Exception {
+		MemoryLockBackend backend = new MemoryLockBackend();
+		LocalLocks localLocks = new LocalLocks();
+		LockInfo lockInfo = new LockInfo(LockType.Reentrant, "localFirst", 2, -1);
+		AtomicInteger attempts = new AtomicInteger();
+		Lock holder = new LocalFirstLock(counting(backend.getLock(lockInfo), attempts), localLocks.get("localFirst"), lockInfo);
+		Assert.assertTrue(holder.acquire());
+		Assert.assertEquals(1, attempts.get());
+
+		ExecutorService executorService = Executors.newFixedThreadPool(1);
+		Future<Boolean> queued = executorService.submit(() -> {
+			Lock lock = new LocalFirstLock(counting(backend.getLock(lockInfo), attempts), localLocks.get("localFirst"), lockInfo);
+			return lock.acquire() && lock.unlock().isReleased();
+		});
+		TimeUnit.MILLISECONDS.sleep(200);
+		Assert.assertEquals(1, attempts.get());
+		Assert.assertEquals(ReleaseResult.RELEASED, holder.unlock());
+		Assert.assertTrue(queued.get(1, TimeUnit.SECONDS));
+		Assert.assertEquals(2, attempts.get());
+
+		Callable<Boolean> takeLocal = () -> {
+			java.util.concurrent.locks.Lock local = localLocks.get("localFirst");
+			if (!local.tryLock()) {
+				return false;
+			}
+			local.unlock();
+			return true;
+		};
+		Assert.assertTrue(backend.getLock(lockInfo).acquireAsync(-1L).toCompletableFuture().get());
+		Lock failed = new LocalFirstLock(backend.getLock(lockInfo), localLocks.get("localFirst"), lockInfo);
+		Assert.assertFalse(failed.tryAcquire());
+		Assert.assertFalse(failed.isLocallyHeld());
+		Assert.assertTrue(executorService.submit(takeLocal).get());
+		Assert.assertEquals(ReleaseResult.RELEASED, backend.getLock(lockInfo).unlockAsync(-1L).toCompletableFuture().get());
+
+		Lock broken = new LocalFirstLock(new Lock() {
+			@Override
+			public boolean acquire() {
+				throw new IllegalStateException("redis down");
+			}
+
+			@Override
+			public boolean acquire(long waitTime, TimeUnit unit) {
+				return acquire();
+			}
+
+			@Override
+			public ReleaseResult unlock() {
+				return ReleaseResult.LEASE_EXPIRED;
+			}
+		}, localLocks.get("localFirst"), lockInfo);
+		try {
+			broken.acquire();
+			Assert.fail();
+		} catch (IllegalStateException expected) {
+		}
+		Assert.assertFalse(broken.isLocallyHeld());
+		Assert.assertTrue(executorService.submit(takeLocal).get());
+	}
+
+	/**
+	 * 统计对底层锁的加锁次数
+	 */
+	private static Lock counting(Lock delegate, AtomicInteger attempts) {
+		return new Lock() {
+			@Override
+			public boolean acquire() {
+				attempts.incrementAndGet();
+				return delegate.acquire();
+			}
+
+			@Override
+			public boolean acquire(long waitTime, TimeUnit unit) {
+				attempts.incrementAndGet();
+				return delegate.acquire(waitTime, unit);
+			}
+
+			@Override
+			public boolean tryAcquire() {
+				attempts.incrementAndGet();
+				return delegate.tryAcquire();
+			}
+
+			@Override
+			public ReleaseResult unlock() {
+				return delegate.unlock();
+			}
+		};
+	}
+
+	/**
+	 * 测试内存公平锁按到达顺序交接，释放时直接交给队首等待者，释放后立即插队的加锁失败
+	 */
+	@Test
+	public void memoryFairLock() throws Exception {
+		MemoryLockBackend backend = new MemoryLockBackend();
+		Lock lock = backend.getLock(new LockInfo(LockType.Fair, "memoryFair", 5, -1));
+		Assert.assertTrue(lock.acquireAsync(1L).toCompletableFuture().get());
+		CompletableFuture<Boolean> second = lock.acquireAsync(2L).toCompletableFuture();
+		CompletableFuture<Boolean> third = lock.acquireAsync(3L).toCompletableFuture();
+		Assert.assertFalse(lock.acquireAsync(4L, 0, TimeUnit.SECONDS).toCompletableFuture().get());
+
+		Assert.assertEquals(ReleaseResult.RELEASED, lock.unlockAsync(1L).toCompletableFuture().get());
+		Assert.assertFalse(lock.acquireAsync(4L, 0, TimeUnit.SECONDS).toCompletableFuture().get());
+		Assert.assertTrue(second.get(1, TimeUnit.SECONDS));
+		Assert.assertFalse(third.isDone());
+		Assert.assertEquals(ReleaseResult.RELEASED, lock.unlockAsync(2L).toCompletableFuture().get());
+		Assert.assertTrue(third.get(1, TimeUnit.SECONDS));
+
+		ExecutorService executorService = Executors.newFixedThreadPool(1);
+		Future<Boolean> blocked = executorService.submit(() -> lock.acquire()
+				&& lock.isHeldAsync(Thread.currentThread().getId()).toCompletableFuture().get());
+		TimeUnit.MILLISECONDS.sleep(200);
+		Assert.assertEquals(ReleaseResult.RELEASED, lock.unlockAsync(3L).toCompletableFuture().get());
+		Assert.assertFalse(lock.acquireAsync(4L, 0, TimeUnit.SECONDS).toCompletableFuture().get());
+		Assert.assertTrue(blocked.get(1, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * 测试内存读写锁：读锁之间共享，与写锁互斥，写锁持有者可再加读锁降级
+	 */
+	@Test
+	public void memoryReadWriteLock() throws Exception {
+		MemoryLockBackend backend = new MemoryLockBackend();
+		Lock read = backend.getLock(new LockInfo(LockType.Read, "memoryReadWrite", 0, -1));
+		Lock write = backend.getLock(new LockInfo(LockType.Write, "memoryReadWrite", 0, -1));
+		Assert.assertTrue(read.acquireAsync(1L).toCompletableFuture().get());
+		Assert.assertTrue(read.acquireAsync(2L).toCompletableFuture().get());
+		Assert.assertFalse(write.acquireAsync(3L).toCompletableFuture().get());
+		read.unlockAsync(1L);
+		read.unlockAsync(2L);
+
+		Assert.assertTrue(write.acquireAsync(3L).toCompletableFuture().get());
+		Assert.assertFalse(read.acquireAsync(4L).toCompletableFuture().get());
+		Assert.assertTrue(read.acquireAsync(3L).toCompletableFuture().get());
+		Assert.assertEquals(ReleaseResult.RELEASED, write.unlockAsync(3L).toCompletableFuture().get());
+		Assert.assertTrue(read.acquireAsync(4L).toCompletableFuture().get());
+		Assert.assertFalse(write.acquireAsync(5L).toCompletableFuture().get());
+	}
+
+	/**
+	 * 测试内存锁的异步等待者在等待超时时失败，在持有者租期到期时由定时检查获得锁
+	 */
+	@Test
+	public void memoryAsyncWaiter() throws Exception {
+		MemoryLockBackend backend = new MemoryLockBackend();
+		Lock lock = backend.getLock(new LockInfo(LockType.Reentrant, "memoryAsync", 5, 1));
+		Assert.assertTrue(lock.acquireAsync(1L).toCompletableFuture().get());
+
+		long start = System.nanoTime();
+		Assert.assertFalse(lock.acquireAsync(2L, 200, TimeUnit.MILLISECONDS).toCompletableFuture().get(1, TimeUnit.SECONDS));
+		Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+
+		Assert.assertTrue(lock.acquireAsync(3L).toCompletableFuture().get(2, TimeUnit.SECONDS));
+		Assert.assertEquals(ReleaseResult.NOT_OWNER, lock.unlockAsync(1L).toCompletableFuture().get());
+		Assert.assertTrue(lock.isHeldAsync(3L).toCompletableFuture().get());
+	}
+
 	/**
 	 * 测试watchdog无限延长加锁时间
 	 */
@@ -139,6 +790,41 @@ public class KlockTests {
 
 	}
 
+	/**
+	 * 测试waitTime为0时快速失败：只尝试一次立即失败，消息包含锁名称，异常不填充堆栈
+	 */
+	@Test
+	public void lockTimeoutFailFastNonWaiting() {
+		LockHandle holder = redisLockClient.acquire(new LockInfo(LockType.Reentrant, "lock.foo-service", 1, 10));
+		long start = System.nanoTime();
+		try {
+			timeoutService.fooNonWaiting();
+			Assert.fail();
+		} catch (KlockTimeoutException expected) {
+			Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+			Assert.assertTrue(expected.getMessage().contains("lock.foo-service"));
+			Assert.assertEquals(0, expected.getStackTrace().length);
+		} finally {
+			holder.release();
+		}
+	}
+
+	/**
+	 * 测试未配置加锁超时策略时默认快速失败，不会在未获得锁时执行业务
+	 */
+	@Test
+	public void lockTimeoutDefault() throws InterruptedException {
+
+		ExecutorService executorService = Executors.newFixedThreadPool(1);
+
+		executorService.submit(() -> timeoutService.foo1());
+
+		TimeUnit.MILLISECONDS.sleep(1000);
+
+		exception.expect(KlockTimeoutException.class);
+		timeoutService.fooDefaultStrategy();
+	}
+
 	/**
 	 * 测试加锁超时阻塞等待
 	 * 会打印10次acquire lock
@@ -170,6 +856,65 @@ public class KlockTests {
 		Assert.assertTrue((end - start) >= 10*2*1000);
 	}
 
+	/**
+	 * 测试加锁超时后等待释放通知：同步和异步的等待者都在锁释放后立即获得锁，
+	 * 而不是等到下一次轮询。释放时等待者已等待约1秒，按指数间隔轮询时至少还要再等数百毫秒
+	 */
+	@Test
+	public void lockTimeoutKeepAcquireNotified() throws Exception {
+		LockInfo<Long> lockInfo = new LockInfo<>(LockType.Reentrant, "lock.notified-service",
+				1, LockTimeoutStrategy.KEEP_ACQUIRE_NOTIFIED, 10, null, null, null);
+
+		LockHandle holder = redisLockClient.acquire(lockInfo);
+		ExecutorService executorService = Executors.newFixedThreadPool(1);
+		Future<Long> waiter = executorService.submit(timeoutService::fooNotified);
+		TimeUnit.MILLISECONDS.sleep(2000);
+		Assert.assertFalse(waiter.isDone());
+		long releasedAt = System.nanoTime();
+		Assert.assertEquals(ReleaseResult.RELEASED, holder.release());
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(waiter.get(1, TimeUnit.SECONDS) - releasedAt) < 300);
+
+		holder = redisLockClient.acquire(lockInfo);
+		CompletableFuture<Long> asyncWaiter = redisLockClient.lockAsync(
+				() -> CompletableFuture.completedFuture(System.nanoTime()), lockInfo);
+		TimeUnit.MILLISECONDS.sleep(2000);
+		Assert.assertFalse(asyncWaiter.isDone());
+		releasedAt = System.nanoTime();
+		Assert.assertEquals(ReleaseResult.RELEASED, holder.release());
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(asyncWaiter.get(1, TimeUnit.SECONDS) - releasedAt) < 300);
+	}
+
+	/**
+	 * 测试等待释放通知超过总等待时间后，同步和异步的等待者都抛出KlockTimeoutException。总等待时间缩短为1.5秒
+	 */
+	@Test
+	public void lockTimeoutKeepAcquireNotifiedDeadline() throws Exception {
+		LockInfo<Long> lockInfo = new LockInfo<>(LockType.Reentrant, "lock.notified-service",
+				1, LockTimeoutStrategy.KEEP_ACQUIRE_NOTIFIED, 10, null, null, null);
+		LockHandle holder = redisLockClient.acquire(lockInfo);
+		klockConfig.setKeepAcquireNotifiedTimeout(1500);
+		try {
+			try {
+				timeoutService.fooNotified();
+				Assert.fail();
+			} catch (KlockTimeoutException expected) {
+				Assert.assertTrue(expected.getMessage().contains("within 1500ms"));
+			}
+
+			CompletableFuture<Long> asyncWaiter = redisLockClient.lockAsync(
+					() -> CompletableFuture.completedFuture(System.nanoTime()), lockInfo);
+			try {
+				asyncWaiter.get(5, TimeUnit.SECONDS);
+				Assert.fail();
+			} catch (ExecutionException expected) {
+				Assert.assertTrue(expected.getCause() instanceof KlockTimeoutException);
+			}
+		} finally {
+			klockConfig.setKeepAcquireNotifiedTimeout(KlockConfig.DEFAULT_KEEP_ACQUIRE_NOTIFIED_TIMEOUT);
+			holder.release();
+		}
+	}
+
 	/**
 	 * 测试自定义加锁超时处理策略
 	 * 会执行1次自定义加锁超时处理策略
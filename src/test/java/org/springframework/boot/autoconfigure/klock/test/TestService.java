@@ -1,6 +1,7 @@
 package org.springframework.boot.autoconfigure.klock.test;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.klock.annotation.FencingToken;
 import org.springframework.boot.autoconfigure.klock.annotation.Klock;
 import org.springframework.boot.autoconfigure.klock.annotation.KlockKey;
 import org.springframework.boot.autoconfigure.klock.core.RedisLockClient;
@@ -8,6 +9,12 @@ import org.springframework.boot.autoconfigure.klock.model.LockInfo;
 import org.springframework.boot.autoconfigure.klock.model.LockTimeoutStrategy;
 import org.springframework.boot.autoconfigure.klock.model.LockType;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by kl on 2017/12/29.
@@ -18,6 +25,8 @@ public class TestService {
     @Autowired
     private RedisLockClient redisLockClient;
 
+    private final AtomicInteger rebuildCount = new AtomicInteger();
+
     @Klock(keys = {"#param"},
         lockTimeoutStrategy = LockTimeoutStrategy.FAIL_FAST,
         customLockTimeoutStrategy = "lockParams",customReleaseTimeoutStrategy = "releaseParams")
@@ -51,6 +60,12 @@ public class TestService {
         }, lockInfo1);
     }
 
+    public CompletableFuture<String> getValueAsync(String param) {
+        LockInfo<String> lockInfo = new LockInfo<>(LockType.Reentrant, param, 1, 6);
+        return redisLockClient.lockAsync(() -> CompletableFuture.completedFuture(Thread.currentThread().getName()),
+                lockInfo);
+    }
+
     private String lockParams(String param) {
         System.out.println("lockParams");
         return "lockParams";
@@ -67,6 +82,45 @@ public class TestService {
         return "success";
     }
 
+    @Klock(name = "account", multiKey = true, waitTime = 1, lockTimeoutStrategy = LockTimeoutStrategy.FAIL_FAST)
+    public String transfer(@KlockKey String from, @KlockKey String to) throws Exception {
+        Thread.sleep(1000 * 3);
+        return "success";
+    }
+
+    @Klock(name = "account", multiKey = true, waitTime = 1, lockTimeoutStrategy = LockTimeoutStrategy.FAIL_FAST)
+    public String updateAccounts(@KlockKey List<String> accounts) {
+        return "success";
+    }
+
+    @Klock(name = "downstream", lockType = LockType.Semaphore, permits = 2, waitTime = 0,
+            lockTimeoutStrategy = LockTimeoutStrategy.FAIL_FAST)
+    public String callDownstream() throws Exception {
+        Thread.sleep(1000 * 2);
+        return "success";
+    }
+
+    @Klock(name = "product", keys = {"#id"}, singleFlight = true)
+    public int rebuildProduct(String id) throws Exception {
+        Thread.sleep(1000);
+        return rebuildCount.incrementAndGet();
+    }
+
+    @Klock(keys = {"#param"})
+    public long getFencingToken(String param, @FencingToken long fencingToken) {
+        return fencingToken;
+    }
+
+    @Klock(name = "reactive", waitTime = 0, lockTimeoutStrategy = LockTimeoutStrategy.FAIL_FAST)
+    public Mono<String> getValueReactive(Mono<String> source) {
+        return source;
+    }
+
+    @Klock(name = "reactive", waitTime = 0, lockTimeoutStrategy = LockTimeoutStrategy.FAIL_FAST)
+    public Flux<Long> getValuesReactive(Flux<Long> source) {
+        return source;
+    }
+
     @Klock(keys = {"#user.name", "#user.id"})
     public String getValue(User user) throws Exception {
         Thread.sleep(60 * 1000);
@@ -28,6 +28,11 @@ public class TimeoutService {
         }
     }
 
+    @Klock(name="foo-service", waitTime=1)
+    public void fooDefaultStrategy() {
+        logger.info("acquire lock");
+    }
+
     @Klock(name="foo-service", waitTime=2, lockTimeoutStrategy = LockTimeoutStrategy.FAIL_FAST)
     public void foo2() {
         try {
@@ -48,6 +53,17 @@ public class TimeoutService {
         }
     }
 
+    @Klock(name="foo-service", waitTime=0, lockTimeoutStrategy = LockTimeoutStrategy.FAIL_FAST)
+    public void fooNonWaiting() {
+        logger.info("acquire lock");
+    }
+
+    @Klock(name="notified-service", waitTime=1, lockTimeoutStrategy = LockTimeoutStrategy.KEEP_ACQUIRE_NOTIFIED)
+    public long fooNotified() {
+        logger.info("acquire lock");
+        return System.nanoTime();
+    }
+
     @Klock(name="foo-service",
             waitTime=2,
             customLockTimeoutStrategy = "customLockTimeout")
@@ -69,7 +85,7 @@ public class TimeoutService {
     }
 
 
-    @Klock(name="foo-service", waitTime=10)
+    @Klock(name="foo-service", waitTime=10, lockTimeoutStrategy = LockTimeoutStrategy.NO_OPERATION)
     public void foo5(String foo, String bar) {
         try {
             TimeUnit.SECONDS.sleep(2);
@@ -79,7 +95,7 @@ public class TimeoutService {
         }
     }
 
-    @Klock(name="foo-service", leaseTime=10, waitTime = 10000)
+    @Klock(name="foo-service", leaseTime=10, waitTime = 10000, releaseTimeoutStrategy = ReleaseTimeoutStrategy.NO_OPERATION)
     public void foo6(String foo, String bar) {
         try {
             TimeUnit.SECONDS.sleep(2);